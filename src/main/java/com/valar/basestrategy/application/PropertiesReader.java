@@ -7,9 +7,9 @@ public class PropertiesReader {
 
     public static Properties properties;
     static{
+        properties = new Properties();
         try {
             FileReader reader = new FileReader("BaseStrategy.properties");
-            properties = new Properties();
             properties.load(reader);
         }catch (Exception e){e.printStackTrace();}
     }
@@ -19,12 +19,19 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
+import com.valar.basestrategy.service.RegimeService;
 import com.valar.basestrategy.service.Strategy;
 import com.valar.basestrategy.utils.ValarUtils;
+import com.valar.basestrategy.utils.DayPnlMatrix;
 import com.valar.basestrategy.utils.KeyValues;
+import com.valar.basestrategy.tradeAndDayMetrics.KeystoreClusters;
+import com.valar.basestrategy.tradeAndDayMetrics.KeystoreRanking;
+import com.valar.basestrategy.tradeAndDayMetrics.Portfolio;
 import com.valar.basestrategy.utils.PrintWriters;
 import com.valar.basestrategy.utils.S3FolderDownloader;
+import com.valar.basestrategy.utils.Workers;
 
 public class ValarTrade {
     public static String keystoreHeading = "";
@@ -55,6 +62,7 @@ public class ValarTrade {
         ValarTrade valarTrade = new ValarTrade();
         keystoreHeading = keyValuesReader.readLine();
         PrintWriters.loadAllWriters();
+        RegimeService.writeRegimeHistory();
 
 
         valarTrade.createDirectories(kvSerialNos);
@@ -63,27 +71,26 @@ public class ValarTrade {
 
 
         List<String> keystoreLines = Files.readAllLines(Paths.get(allFilesMap.get("keystore")));
-        Set<Integer> candlePeriodSet = new HashSet<>();
         for(int i = 1;i < keystoreLines.size();i++){
             KeyValues kv = new KeyValues(keystoreLines.get(i));
+            kv.row = i - 1;
             keyStoresList.add(kv);
-            candlePeriodSet.add(kv.candlePeriod);
         }
+        DayPnlMatrix.open(keyStoresList.stream().mapToInt(kv -> kv.sno).toArray());
 
 
         int[] indexTypes = {0,1};
-        boolean[] positional = {true,false};
 
         for(int indexType : indexTypes) {
-            for(boolean pos:positional) {
-                for(int candlePeriod : candlePeriodSet) {
-                    ValarUtils.indexType = indexType;
-                    setIndexAttribs(indexType);
-                    applyStrategyOnKeystore(pos,candlePeriod, indexType, keyStoresList.size());
-                }
-            }
+            ValarUtils.indexType = indexType;
+            setIndexAttribs(indexType);
+            applyStrategyOnKeystore(indexType, keyStoresList.size());
         }
 
+        KeystoreRanking.write();
+        Portfolio.write();
+        KeystoreClusters.write();
+        DayPnlMatrix.close();
         PrintWriters.closeAllWriters();
 
         String time2 = LocalTime.now().toString();
@@ -95,26 +102,52 @@ public class ValarTrade {
         System.out.println("Total Time Taken(In Seconds) -> "+difference);
     }
 
-    private static void applyStrategyOnKeystore(boolean positional,int candlePeriod,int bnOrN,int ksSize)throws Exception{
+    // candle periods and positional/intraday keystores of a batch share one walk over the data
+    private static void applyStrategyOnKeystore(int bnOrN,int ksSize)throws Exception{
         int runKeystores = Integer.parseInt(properties.getProperty("runKeystores"));
+        List<List<KeyValues>> batches = new ArrayList<>();
         for(int i = 0;i < ksSize;i++){
             List<KeyValues> runForKeyAttribs = new ArrayList<>();
             int j = i;
             for(; runForKeyAttribs.size() < runKeystores && j < ksSize;j++) {
                 KeyValues kv = keyStoresList.get(j);
-                if(kv.indexType ==bnOrN && kv.positional==positional && kv.candlePeriod ==candlePeriod) {
+                if(kv.indexType ==bnOrN) {
                     System.out.println(kv.sno);
                     runForKeyAttribs.add(kv);
                 }
             }
             i = j-1;
 
-            if(runForKeyAttribs.size()!=0) {
-                Strategy strategy = new Strategy(positional,candlePeriod,runForKeyAttribs);
-                strategy.apply();
-                strategy.calculateOverAll();
-            }
+            if(runForKeyAttribs.size()!=0) batches.add(runForKeyAttribs);
+        }
+
+        int parallelism = Integer.parseInt(properties.getProperty("parallelism","1"));
+        if(parallelism <= 1 || batches.size() <= 1) {
+            for(List<KeyValues> batch : batches) runBatch(batch);
+            return;
         }
+
+        // batches run as independent tasks, each into its own buffer, at most parallelism at a time; a buffer is
+        // written out once the batches before it are, so the output files are the same as a sequential run
+        List<Callable<PrintWriters.Buffer>> tasks = new ArrayList<>();
+        for(List<KeyValues> batch : batches)
+            tasks.add(() -> {
+                PrintWriters.Buffer buffer = new PrintWriters.Buffer();
+                PrintWriters.Buffer previous = PrintWriters.bind(buffer);
+                try {
+                    runBatch(batch);
+                } finally {
+                    PrintWriters.bind(previous);
+                }
+                return buffer;
+            });
+        Workers.inOrder(tasks, parallelism, PrintWriters.Buffer::writeToCurrent);
+    }
+
+    private static void runBatch(List<KeyValues> runForKeyAttribs)throws Exception{
+        Strategy strategy = new Strategy(runForKeyAttribs);
+        strategy.apply();
+        strategy.calculateOverAll();
     }
 
     public void createDirectories(Set<Integer> kvSerialNos){
@@ -0,0 +1,97 @@
+package com.valar.basestrategy.entities;
+
+import java.util.Arrays;
+
+/**
+ * Forward path of one entry up to its time exit: the running max high (favourable excursion of a long, adverse
+ * of a short) and running min low, kept only at the checked bars where one of them moves, plus the time-exit
+ * bar. Both columns are monotone, so the bar where any stop or target is first hit is a binary search away.
+ */
+public class ExcursionPath {
+    public final TradeEntity trade;
+    public final char lOrS;
+    private int size;
+    private float[] maxHigh = new float[8], minLow = new float[8];
+    // the bar and the exit EMA/RSI/pivot a trade squared there would report
+    private String[] lines = new String[8];
+    private double[] ema = new double[8], rsi = new double[8], pivot = new double[8];
+    public boolean closed;
+    public String timeExitReason, timeExitReasonInfo;
+
+    public ExcursionPath(TradeEntity trade){
+        this.trade = trade;
+        this.lOrS = trade.lOrS();
+    }
+
+    public int size(){
+        return size;
+    }
+
+    // whether a checked bar with this range moves the path
+    public boolean movedBy(float high, float low){
+        return size == 0 || high > maxHigh[size - 1] || low < minLow[size - 1];
+    }
+
+    public void add(float high, float low, String ln, double emaVal, double rsiVal, double pivotVal){
+        if(size == maxHigh.length){
+            int n = size * 2;
+            maxHigh = Arrays.copyOf(maxHigh, n);
+            minLow = Arrays.copyOf(minLow, n);
+            lines = Arrays.copyOf(lines, n);
+            ema = Arrays.copyOf(ema, n);
+            rsi = Arrays.copyOf(rsi, n);
+            pivot = Arrays.copyOf(pivot, n);
+        }
+        maxHigh[size] = size == 0 ? high : Math.max(maxHigh[size - 1], high);
+        minLow[size] = size == 0 ? low : Math.min(minLow[size - 1], low);
+        lines[size] = ln;
+        ema[size] = emaVal;
+        rsi[size] = rsiVal;
+        pivot[size] = pivotVal;
+        size++;
+    }
+
+    // the time-exit bar ends the path, whether or not it moved it
+    public void close(float high, float low, String ln, double emaVal, double rsiVal, double pivotVal,
+                      String reason, String reasonInfo){
+        if(size == 0 || !ln.equals(lines[size - 1])) add(high, low, ln, emaVal, rsiVal, pivotVal);
+        closed = true;
+        timeExitReason = reason;
+        timeExitReasonInfo = reasonInfo;
+    }
+
+    // point where a trade with these levels is squared (stop before target on the same bar, the time exit when
+    // neither is hit), -1 if the path is still open and neither is hit. NaN levels are never hit
+    public int exitAt(double stopLoss, double target){
+        int stop = first(stopLoss, lOrS != 'l'), reach = first(target, lOrS == 'l');
+        if(stop != -1 && (reach == -1 || stop <= reach)) return stop;
+        if(reach != -1) return reach;
+        return closed ? size - 1 : -1;
+    }
+
+    public boolean stopHitAt(int i, double stopLoss){
+        return lOrS == 'l' ? minLow[i] <= stopLoss : maxHigh[i] >= stopLoss;
+    }
+
+    public boolean targetHitAt(int i, double target){
+        return lOrS == 'l' ? maxHigh[i] >= target : minLow[i] <= target;
+    }
+
+    // first point whose max high reaches (high) or min low falls to level
+    private int first(double level, boolean high){
+        int lo = 0, hi = size;
+        while(lo < hi){
+            int mid = (lo + hi) >>> 1;
+            if(high ? maxHigh[mid] >= level : minLow[mid] <= level) hi = mid;
+            else lo = mid + 1;
+        }
+        return lo == size ? -1 : lo;
+    }
+
+    public float maxHigh(int i){ return maxHigh[i]; }
+    public float minLow(int i){ return minLow[i]; }
+    public String line(int i){ return lines[i]; }
+    public double ema(int i){ return ema[i]; }
+    public double rsi(int i){ return rsi[i]; }
+    public double pivot(int i){ return pivot[i]; }
+}
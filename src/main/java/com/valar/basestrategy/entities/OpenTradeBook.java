@@ -0,0 +1,240 @@
+package com.valar.basestrategy.entities;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Open trades of one StrategyImpl. Besides the trades in entry order, longs and shorts are kept in heaps by
+ * stop-loss and by target, so a bar only looks at the trades whose levels lie inside its range. Squared
+ * trades are dropped from the list after each bar and from the heaps lazily. In event-driven mode a trade is
+ * instead filed once under the bar where its stop or target is first touched (see FirstTouchIndex).
+ * barProfit is the day-max-profit input: getTotalProfit summed over the trades open during the bar, taken after
+ * its exits, so a trade squared on the bar counts with what it booked there (see squared).
+ */
+public class OpenTradeBook {
+    private final List<TradeEntity> open = new ArrayList<>();
+    // long stop hit when low <= stop, long target when high >= target; the reverse for shorts
+    private final LevelHeap longStops = new LevelHeap(true), longTargets = new LevelHeap(false),
+            shortStops = new LevelHeap(false), shortTargets = new LevelHeap(true);
+    private final LevelHeap byTouchBar = new LevelHeap(false);
+    private final List<TradeEntity> touched = new ArrayList<>();
+
+    // getTotalProfit/getTotalProfitPercent over the trades open during the last bar, after its exits
+    public float barProfit, barProfitPercent;
+    // open trades' getTotalProfit/Percent as at entry, kept per trade and summed; an open trade books nothing
+    private float openProfit, openProfitPercent, squaredProfit, squaredProfitPercent;
+    private final List<float[]> openProfits = new ArrayList<>();
+
+    public void add(TradeEntity trade){
+        addOpen(trade);
+        char lOrS = trade.lOrS();
+        if(lOrS == 'l'){
+            longStops.push(trade.stopLoss(), trade);
+            longTargets.push(trade.target(), trade);
+        }else if(lOrS == 's'){
+            shortStops.push(trade.stopLoss(), trade);
+            shortTargets.push(trade.target(), trade);
+        }
+    }
+
+    // event driven: touchBar is the first bar the trade's levels are touched, -1 if never
+    public void add(TradeEntity trade, int touchBar){
+        addOpen(trade);
+        reschedule(trade, touchBar);
+    }
+
+    public void reschedule(TradeEntity trade, int touchBar){
+        if(touchBar >= 0) byTouchBar.push(touchBar, trade);
+    }
+
+    private void addOpen(TradeEntity trade){
+        float[] profits = {trade.getTotalProfit(), trade.getTotalProfitPercent()};
+        open.add(trade);
+        openProfits.add(profits);
+        openProfit += profits[0];
+        openProfitPercent += profits[1];
+    }
+
+    // empties the book for reuse
+    public void clear(){
+        open.clear();
+        openProfits.clear();
+        openProfit = 0;
+        openProfitPercent = 0;
+        squaredProfit = 0;
+        squaredProfitPercent = 0;
+        barProfit = 0;
+        barProfitPercent = 0;
+        longStops.clear();
+        longTargets.clear();
+        shortStops.clear();
+        shortTargets.clear();
+        byTouchBar.clear();
+        touched.clear();
+    }
+
+    public int size(){
+        return open.size();
+    }
+
+    // open trades in entry order
+    public List<TradeEntity> getOpen(){
+        return open;
+    }
+
+    // open trades with a stop-loss or target inside [low, high], in entry order
+    public List<TradeEntity> touched(float low, float high){
+        touched.clear();
+        longStops.popWhileAtLeast(low, touched);
+        longTargets.popWhileAtMost(high, touched);
+        shortStops.popWhileAtMost(high, touched);
+        shortTargets.popWhileAtLeast(low, touched);
+        return inEntryOrder();
+    }
+
+    // event driven: open trades filed under bar or an earlier one
+    public List<TradeEntity> touchedBy(int bar){
+        touched.clear();
+        byTouchBar.popWhileAtMost(bar, touched);
+        return inEntryOrder();
+    }
+
+    private List<TradeEntity> inEntryOrder(){
+        if(touched.size() > 1){
+            touched.sort(Comparator.comparingInt(t -> t.tradeId));
+            // a trade can come out of both its heaps
+            int n = 1;
+            for(int i = 1; i < touched.size(); i++)
+                if(touched.get(i) != touched.get(n - 1)) touched.set(n++, touched.get(i));
+            touched.subList(n, touched.size()).clear();
+        }
+        return touched;
+    }
+
+    // trade has just been squared: what it booked counts towards the bar's barProfit. Call before its ledger row
+    // is released
+    public void squared(TradeEntity trade){
+        squaredProfit += trade.getTotalProfit();
+        squaredProfitPercent += trade.getTotalProfitPercent();
+    }
+
+    // drops trades squared during the bar and sets barProfit; call once the bar's exits are done
+    public void removeSquared(){
+        int n = 0;
+        for(int i = 0; i < open.size(); i++){
+            TradeEntity trade = open.get(i);
+            float[] profits = openProfits.get(i);
+            if(trade.tradeSquared){
+                openProfit -= profits[0];
+                openProfitPercent -= profits[1];
+                continue;
+            }
+            open.set(n, trade);
+            openProfits.set(n++, profits);
+        }
+        if(n < open.size()){
+            open.subList(n, open.size()).clear();
+            openProfits.subList(n, openProfits.size()).clear();
+            if(open.isEmpty()){
+                openProfit = 0;
+                openProfitPercent = 0;
+            }
+            longStops.compact(n);
+            longTargets.compact(n);
+            shortStops.compact(n);
+            shortTargets.compact(n);
+            byTouchBar.compact(n);
+        }
+        barProfit = openProfit + squaredProfit;
+        barProfitPercent = openProfitPercent + squaredProfitPercent;
+        squaredProfit = 0;
+        squaredProfitPercent = 0;
+    }
+
+    // binary heap of price levels with the trade each belongs to; squared trades are skipped when met
+    private static class LevelHeap {
+        private final boolean max;
+        private double[] levels = new double[16];
+        private TradeEntity[] trades = new TradeEntity[16];
+        private int size;
+
+        LevelHeap(boolean max){
+            this.max = max;
+        }
+
+        void push(double level, TradeEntity trade){
+            if(Double.isNaN(level)) return; // never hit
+            if(size == levels.length){
+                levels = Arrays.copyOf(levels, size * 2);
+                trades = Arrays.copyOf(trades, size * 2);
+            }
+            int i = size++;
+            while(i > 0){
+                int parent = (i - 1) >>> 1;
+                if(!before(level, levels[parent])) break;
+                levels[i] = levels[parent];
+                trades[i] = trades[parent];
+                i = parent;
+            }
+            levels[i] = level;
+            trades[i] = trade;
+        }
+
+        // max heap: pops levels >= price
+        void popWhileAtLeast(double price, List<TradeEntity> out){
+            while(size > 0 && levels[0] >= price) popInto(out);
+        }
+
+        // min heap: pops levels <= price
+        void popWhileAtMost(double price, List<TradeEntity> out){
+            while(size > 0 && levels[0] <= price) popInto(out);
+        }
+
+        void clear(){
+            Arrays.fill(trades, 0, size, null);
+            size = 0;
+        }
+
+        // rebuilds without squared trades once they outnumber the open ones
+        void compact(int openTrades){
+            if(size <= 2 * openTrades + 16) return;
+            double[] oldLevels = levels;
+            TradeEntity[] oldTrades = trades;
+            int oldSize = size;
+            levels = new double[Math.max(16, openTrades * 2)];
+            trades = new TradeEntity[levels.length];
+            size = 0;
+            for(int i = 0; i < oldSize; i++)
+                if(!oldTrades[i].tradeSquared) push(oldLevels[i], oldTrades[i]);
+        }
+
+        private void popInto(List<TradeEntity> out){
+            TradeEntity top = trades[0];
+            size--;
+            double level = levels[size];
+            TradeEntity trade = trades[size];
+            trades[size] = null;
+            int i = 0;
+            while(true){
+                int child = 2 * i + 1;
+                if(child >= size) break;
+                if(child + 1 < size && before(levels[child + 1], levels[child])) child++;
+                if(!before(levels[child], level)) break;
+                levels[i] = levels[child];
+                trades[i] = trades[child];
+                i = child;
+            }
+            if(size > 0){
+                levels[i] = level;
+                trades[i] = trade;
+            }
+            if(!top.tradeSquared) out.add(top);
+        }
+
+        private boolean before(double a, double b){
+            return max ? a > b : a < b;
+        }
+    }
+}
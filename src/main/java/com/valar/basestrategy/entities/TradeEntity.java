@@ -1,344 +1,187 @@
 package com.valar.basestrategy.entities;
 
-import com.valar.basestrategy.state.day.IndexDayState;
-import com.valar.basestrategy.state.day.DayState;
 import com.valar.basestrategy.state.minute.IndexState;
-import com.valar.basestrategy.state.minute.State;
 import com.valar.basestrategy.tradeAndDayMetrics.TradeMetric;
+import com.valar.basestrategy.utils.CsvRow;
 import com.valar.basestrategy.utils.KeyValues;
-import com.valar.basestrategy.utils.PrintAttribs;
-
-import java.util.*;
 
 import static com.valar.basestrategy.service.Strategy.runTill;
 
+// one trade: a handle on its row of the StrategyImpl's TradeLedger
 public class TradeEntity {
-    public float indexCloseAtEntry;
-    public PrintAttribs printAttribs = new PrintAttribs();
-    private KeyValues kv;
+    private final TradeLedger ledger;
+    int row;
+    private final KeyValues kv;
+    private final IndexState indexState;
+    public final int tradeId;
     public boolean canEnter;
-    public int tradeId;
     public boolean tradeSquared;
-    private Ohlc indexohlc;
-    public int holdingPeriod, entryParser = -1;
-    private String entryDate, entryTime;
-    private double dayAtrPercent, dayAtrPercentage;
-
-    // For minute-based
-    private IndexState indexState;
-    private Map<Integer, IndexState> indexStateMap;
-
-    // For day-based
-    //private IndexDayState indexDayState;
-    //private Map<Integer, IndexDayState> indexDayStateMap;
-
-
-    //for tracking ema,rsi,pivot in orderinfo
-    public double entryEma, entryRsi, entryPivot;
-    public double exitEma, exitRsi, exitPivot;
-    public double hhv, llv;
-    public float pdh,pdl,cdh,cdl;
-    public List<TradeAttrib> tradeAttribs = new ArrayList<>(2);
+    // totals of the squared trade, set at exit
+    public TradeMetric overAllTradeMetric;
 
     //regime
     private String regime = "Null";
 
-    public void setTrade(double entryEma, double entryRsi, double entryPivot,float pdh,float pdl,float cdh,float cdl,double hhv,double llv) {
-        this.entryEma=entryEma;
-        this.entryRsi=entryRsi;
-        this.entryPivot=entryPivot;
-        this.pdh=pdh;
-        this.pdl=pdl;
-        this.cdh=cdh;
-        this.cdl=cdl;
-        this.hhv=hhv;
-        this.llv=llv;
-    }
-
-
-    private ProfitMetric profit = new ProfitMetric(),
-            profitPercent = new ProfitMetric(),
-            profitPercentBN = new ProfitMetric(),
-            profitWithCost = new ProfitMetric(),
-            profitPercentWithCost = new ProfitMetric();
-
-    public TradeMetric overAllTradeMetric = new TradeMetric();
-    private List<TradeMetric> tradeMetrics = new ArrayList<>();
-
-    public double stopLoss;
-    public double target;
-
-
-    // Constructor for minute-based (optional) trading
-    public TradeEntity(int tradeId, double dayAtrPercent, double dayAtrPercentage, KeyValues kv,
-                       IndexState indexState, Map<Integer, IndexState> indexStateMap) {
+    public TradeEntity(TradeLedger ledger, int tradeId, double dayAtrPercent, double dayAtrPercentage, KeyValues kv,
+                       IndexState indexState) {
+        this.ledger = ledger;
         this.tradeId = tradeId;
         this.kv = kv;
         this.indexState = indexState;
-        this.indexStateMap = indexStateMap;
-        this.indexohlc = indexState.ohlc;
-        this.entryParser = indexState.parser;
-        this.entryDate = indexState.ohlc.date;
-        this.entryTime = indexState.ohlc.time;
-        this.dayAtrPercent = dayAtrPercent;
-        this.dayAtrPercentage = dayAtrPercentage;
-        loadAttribs(indexState, kv.tradeType.charAt(0), false);
+        Ohlc ohlc = indexState.ohlc;
+        row = ledger.add();
+        ledger.entryBar[row] = indexState.parser;
+        ledger.entryLine[row] = ohlc.ln;
+        ledger.entryClose[row] = ohlc.close;
+        ledger.lOrS[row] = kv.tradeType.charAt(0);
+        ledger.dayAtrPercent[row] = dayAtrPercent;
+        ledger.dayAtrPercentage[row] = dayAtrPercentage;
+        canEnter = true;
     }
 
-    // Constructor for day-based (positional) trading
-    /*public TradeEntity(int tradeId, double dayAtrPercent, double dayAtrPercentage, KeyValues kv,
-                       IndexDayState indexDayState, Map<Integer, IndexDayState> indexDayStateMap) {
-        this.tradeId = tradeId;
-        this.kv = kv;
-        this.indexDayState = indexDayState;
-        this.indexDayStateMap = indexDayStateMap;
-        this.indexohlc = indexDayState.ohlc;
-        this.entryDate = indexDayState.ohlc.date;
-        this.entryTime = indexDayState.ohlc.time;
-        this.dayAtrPercent = dayAtrPercent;
-        this.dayAtrPercentage = dayAtrPercentage;
-        loadAttribs(indexDayState, kv.tradeType.charAt(0), false);
-    }*/
+    public void setTrade(double entryEma, double entryRsi, double entryPivot,float pdh,float pdl,float cdh,float cdl,double hhv,double llv) {
+        ledger.entryEma[row] = entryEma;
+        ledger.entryRsi[row] = entryRsi;
+        ledger.entryPivot[row] = entryPivot;
+        ledger.pdh[row] = pdh;
+        ledger.pdl[row] = pdl;
+        ledger.cdh[row] = cdh;
+        ledger.cdl[row] = cdl;
+        ledger.hhv[row] = hhv;
+        ledger.llv[row] = llv;
+    }
 
-    // Unified method - TradeAttrib for both minute/day state types
-    private TradeEntity loadAttribs(Object os, char tradeType, boolean isReload) {
-        indexCloseAtEntry = indexohlc.close;
-        printAttribs.setVariablesAtEntry(dayAtrPercent, dayAtrPercentage, 0);
+    // the same entry under another keystore (its costs), made on the entry bar, in that keystore's ledger
+    public TradeEntity copyFor(KeyValues kv, TradeLedger ledger) {
+        TradeEntity copy = new TradeEntity(ledger, tradeId, dayAtrPercent(), dayAtrPercentage(), kv, indexState);
+        copy.setTrade(entryEma(), entryRsi(), entryPivot(), pdh(), pdl(), cdh(), cdl(), hhv(), llv());
+        copy.setStopLoss(stopLoss());
+        copy.setTarget(target());
+        copy.regime = regime;
+        return copy;
+    }
 
-        if (isReload) tradeAttribs.clear();
+    public void setStopLoss(double stopLoss) { ledger.stopLoss[row] = stopLoss; }
+    public void setTarget(double target) { ledger.target[row] = target; }
+
+    public char lOrS() { return ledger.lOrS[row]; }
+    public double stopLoss() { return ledger.stopLoss[row]; }
+    public double target() { return ledger.target[row]; }
+    public int entryBar() { return ledger.entryBar[row]; }
+    public int exitBar() { return ledger.exitBar[row]; }
+    public float entryClose() { return ledger.entryClose[row]; }
+    public float exitClose() { return ledger.exitClose[row]; }
+    public String exitReason() { return ledger.reason[row] < 0 ? null : TradeLedger.REASONS[ledger.reason[row]]; }
+    public double entryEma() { return ledger.entryEma[row]; }
+    public double entryRsi() { return ledger.entryRsi[row]; }
+    public double entryPivot() { return ledger.entryPivot[row]; }
+    public double exitEma() { return ledger.exitEma[row]; }
+    public double exitRsi() { return ledger.exitRsi[row]; }
+    public double exitPivot() { return ledger.exitPivot[row]; }
+    public float pdh() { return ledger.pdh[row]; }
+    public float pdl() { return ledger.pdl[row]; }
+    public float cdh() { return ledger.cdh[row]; }
+    public float cdl() { return ledger.cdl[row]; }
+    public double hhv() { return ledger.hhv[row]; }
+    public double llv() { return ledger.llv[row]; }
+    public double dayAtrPercent() { return ledger.dayAtrPercent[row]; }
+    public double dayAtrPercentage() { return ledger.dayAtrPercentage[row]; }
+    public float tradeMaxProfit() { return ledger.maxProfit[row]; }
+    public int holdingPeriod() { return ledger.exitBar[row] - ledger.entryBar[row]; }
+
+    // entry bar's date and time as the Ohlc of the line would hold them (no time on day bars)
+    public String entryDnt() {
+        String ln = ledger.entryLine[row];
+        return ln.substring(0, ln.indexOf(','));
+    }
+    public String entryDate() {
+        String dnt = entryDnt();
+        int space = dnt.indexOf(' ');
+        return space == -1 ? dnt : dnt.substring(0, space);
+    }
+    public String entryTime() {
+        String dnt = entryDnt();
+        int space = dnt.indexOf(' ');
+        return space == -1 ? null : dnt.substring(space + 1);
+    }
 
-        if (os instanceof State) {
-            tradeAttribs.add(new TradeAttrib((State) os, tradeType));
-        } else if (os instanceof IndexDayState) {
-            tradeAttribs.add(new TradeAttrib((IndexDayState) os, tradeType));
-        } else if (os instanceof DayState) {
-            tradeAttribs.add(new TradeAttrib((DayState) os, tradeType));
-        } else {
-            throw new IllegalArgumentException("Unsupported state type: " + os.getClass());
-        }
-        canEnter = true;
-        return this;
+    // the day ATR columns of OrderInfo
+    public CsvRow printAttribs(CsvRow row) {
+        return row.col(dayAtrPercent()).col(dayAtrPercentage()).col(0);
     }
-    public void setStopLoss(double stopLoss) { this.stopLoss = stopLoss; }
-    public void setTarget(double target) { this.target = target; }
 
     public void forceExit() {
         if (!this.tradeSquared) {
             exitTrade("ForceExit", "TimeExit");
             //System.out.println("Forced exit");
-            this.stopLoss = Double.NaN;
-            this.target   = Double.NaN;
-        }
-    }
-
-    class ProfitMetric {
-        public float currentProfit;
-        public float profitBooked;
-        public float maxProfit = Float.NEGATIVE_INFINITY;
-        public float getTotalProfit() { return currentProfit + profitBooked; }
-        public void resetCurrentProfit() { currentProfit = 0; }
-    }
-
-    //  Both minute and day state types
-    public class TradeAttrib {
-        Object os;
-        public char lOrS;
-        float entryPrice;
-        public Ohlc ohlcAtEntry, ohlc;
-        public TradeMetric tradeMetric;
-
-        public TradeAttrib(State os, char lOrS) {
-            this.os = os;
-            this.lOrS = lOrS;
-            setState(os);
-        }
-        public TradeAttrib(IndexDayState os, char lOrS) {
-            this.os = os;
-            this.lOrS = lOrS;
-            setDayState(os);
-        }
-        public TradeAttrib(DayState os, char lOrS) {
-            this.os = os;
-            this.lOrS = lOrS;
-            setDayState(os);
-        }
-
-        private void setState(State os) {
-            this.ohlc = os.ohlc;
-            this.entryPrice = ohlc.close;
-            this.ohlcAtEntry = new Ohlc(ohlc.ln);
-            this.tradeMetric = new TradeMetric(new Ohlc(os.ohlc), lOrS);
-            tradeMetrics.add(tradeMetric);
-        }
-        private void setDayState(DayState os) {
-            this.ohlc = os.ohlc;
-            this.entryPrice = ohlc.close;
-            this.ohlcAtEntry = new Ohlc(ohlc.ln);
-            this.tradeMetric = new TradeMetric(new Ohlc(os.ohlc), lOrS);
-            tradeMetrics.add(tradeMetric);
-        }
-
-        public float getProfit() {
-            if (lOrS == 'l') return (ohlc.close - entryPrice);
-            else return (entryPrice - ohlc.close);
-        }
-
-        public float getProfitPercent() {
-            if (lOrS == 'l') return (ohlc.close - entryPrice) / entryPrice * 100;
-            else return (entryPrice - ohlc.close) / entryPrice * 100;
-        }
-
-        public float getProfitWithCost() {
-            float entryPriceCost = (entryPrice / 100) * kv.costPercent;
-            float exitPriceCost = (ohlc.close / 100) * kv.costPercent;
-            if (lOrS == 'l') return ((ohlc.close - exitPriceCost) - (entryPrice + entryPriceCost));
-            else return ((entryPrice - entryPriceCost) - (ohlc.close + exitPriceCost));
-        }
-
-        public float getProfitPercentWithCost() {
-            float entryPriceCost = (entryPrice / 100) * kv.costPercent;
-            float exitPriceCost = (ohlc.close / 100) * kv.costPercent;
-            if (lOrS == 'l')
-                return (((ohlc.close - exitPriceCost) - (entryPrice + entryPriceCost)) / (entryPrice + entryPriceCost) * 100);
-            else
-                return (((entryPrice - entryPriceCost) - (ohlc.close + exitPriceCost)) / (entryPrice - entryPriceCost) * 100);
-        }
-
-        public float getProfitPercentBN() {
-            if (lOrS == 'l') return (ohlc.close - entryPrice) / indexohlc.close * 100;
-            else return (entryPrice - ohlc.close) / indexohlc.close * 100;
-        }
-
-        public String[] getInfo() {
-            return new String[]{ohlcAtEntry.dnt + "," + ohlcAtEntry.close};
+            setStopLoss(Double.NaN);
+            setTarget(Double.NaN);
         }
     }
 
     public float getBNInTermsOfDistance(float distancePercent, char cOrP) {
-        float indexClose = indexohlc.close;
+        float indexClose = indexState.ohlc.close;
         if (cOrP == 'c') indexClose = indexClose + (distancePercent / 100 * indexClose);
         else indexClose = indexClose - (distancePercent / 100 * indexClose);
 
         return indexClose;
     }
 
+    // profit of the open trade at the current bar's close
     public void updateProfit() {
-        profit.resetCurrentProfit();
-        profitPercent.resetCurrentProfit();
-        profitPercentBN.resetCurrentProfit();
-        profitWithCost.resetCurrentProfit();
-        profitPercentWithCost.resetCurrentProfit();
-
-        for (TradeAttrib tradeAttrib : tradeAttribs) {
-            profit.currentProfit += tradeAttrib.getProfit();
-            profitPercent.currentProfit += tradeAttrib.getProfitPercent();
-            profitPercentBN.currentProfit += tradeAttrib.getProfitPercentBN();
-            profitWithCost.currentProfit += tradeAttrib.getProfitWithCost();
-            profitPercentWithCost.currentProfit += tradeAttrib.getProfitPercentWithCost();
-            profit.maxProfit = Math.max(profit.maxProfit, profitPercent.currentProfit);
+        float close = indexState.ohlc.close, entryPrice = entryClose();
+        if (lOrS() == 'l') {
+            ledger.profit[row] = close - entryPrice;
+            ledger.profitPercent[row] = (close - entryPrice) / entryPrice * 100;
+        } else {
+            ledger.profit[row] = entryPrice - close;
+            ledger.profitPercent[row] = (entryPrice - close) / entryPrice * 100;
         }
+        ledger.maxProfit[row] = Math.max(ledger.maxProfit[row], ledger.profitPercent[row]);
     }
 
-    public float getTotalProfitPercent() { return profitPercent.getTotalProfit(); }
-    public float getTotalProfit() { return profit.getTotalProfit(); }
+    public float getTotalProfitPercent() { return ledger.profitPercent[row]; }
+    public float getTotalProfit() { return ledger.profit[row]; }
 
     public boolean checkExitAndIsToBeExited() {
         updateProfit();
-        if ((!kv.positional && indexohlc.mins >= kv.endTime)
-                || (indexState != null && indexState.finished)
-                || runTill.equals(indexohlc.dnt)) {
-            exitTrade("EndTime", "ExitTime " + indexohlc.time);
+        Ohlc bar = indexState.ohlc;
+        if ((!kv.positional && bar.mins >= kv.endTime)
+                || indexState.finished
+                || runTill.equals(bar.dnt)) {
+            exitTrade("EndTime", "ExitTime " + bar.time);
         }
         return tradeSquared;
     }
 
-    private void updateOverAll() {
-        for (TradeMetric tradeMetric : tradeMetrics)
-            if (tradeMetric.exitOhlc != null)
-                overAllTradeMetric.updateOverAll(tradeMetric);
-    }
-
-    private void shiftTrade(TradeAttrib ta, String reasonInfo) {
-       /* ta.tradeMetric.calculateOverAllMetricsAndPrint(
-                profitPercent.currentProfit, profitWithCost.getTotalProfit(),
-                profitPercentWithCost.getTotalProfit(), "", reasonInfo, tradeId,
-                holdingPeriod, kv, new Ohlc(ta.ohlc), indexohlc.close,
-                "", printAttribs, profit.maxProfit);*/
-        ta.tradeMetric.calculateOverAllMetricsAndPrint(
-                ta.getProfitPercent(), ta.getProfitWithCost(),
-                ta.getProfitPercentWithCost(), "", reasonInfo, tradeId,
-                holdingPeriod, kv, new Ohlc(ta.ohlc), indexohlc.close,
-                "", printAttribs, profit.maxProfit,
-                entryEma, entryRsi, entryPivot,
-                exitEma, exitRsi, exitPivot
-        );
-        profit.profitBooked += ta.getProfit();
-        profitPercent.profitBooked += ta.getProfitPercent();
-        profitPercentBN.profitBooked += ta.getProfitPercentBN();
-        profitWithCost.profitBooked += ta.getProfitWithCost();
-        profitPercentWithCost.profitBooked += ta.getProfitPercentWithCost();
-    }
-
     private void exitTrade(String reason, String reasonInfo) {
-        // For day-based, entryParser use -1 as fallback
-        if (entryParser != -1 && indexState != null)
-            holdingPeriod = indexState.parser - entryParser;
-        else
-            holdingPeriod = 0;
-
-        // Capture exit EMA/RSI/Pivot
-        if (indexState != null && kv != null) {
-            this.exitEma = indexState.getEmaVal(kv.emaPeriod);
-            this.exitRsi = indexState.getRsiVal(kv.rsiPeriod);
-            this.exitPivot = indexState.pivotsInitialized ? (Float)((IndexState)indexState).pp : Double.NaN;
-        }
+        exitTrade(reason, reasonInfo, indexState.ohlc.close);
+    }
 
-        for (TradeAttrib ta : tradeAttribs) {
-            Ohlc exitOhlc = new Ohlc(ta.ohlc);
-            /*ta.tradeMetric.calculateOverAllMetricsAndPrint(
-                    ta.getProfitPercent(), ta.getProfitWithCost(),
-                    ta.getProfitPercentWithCost(), reason, reasonInfo, tradeId,
-                    holdingPeriod, kv, exitOhlc, indexohlc.close, "", printAttribs, profit.maxProfit
-            );*/
-            ta.tradeMetric.calculateOverAllMetricsAndPrint(
-                    ta.getProfitPercent(),
-                    ta.getProfitWithCost(),
-                    ta.getProfitPercentWithCost(),
-                    reason,
-                    reasonInfo,
-                    tradeId,
-                    holdingPeriod,
-                    kv,
-                    exitOhlc,
-                    indexohlc.close,
-                    "", // option, if used
-                    printAttribs,
-                    profit.maxProfit,
-                    entryEma,
-                    entryRsi,
-                    entryPivot,
-                    pdh,
-                    cdh,
-                    hhv,
-                    pdl,
-                    cdl,
-                    llv,
-                    exitEma,
-                    exitRsi,
-                    exitPivot
-            );
-        }
-        updateOverAll();
+    private void exitTrade(String reason, String reasonInfo, float exitPrice) {
+        Ohlc bar = indexState.ohlc;
+        ledger.exitBar[row] = indexState.parser;
+        ledger.exitClose[row] = exitPrice;
+        ledger.reason[row] = TradeLedger.reasonCode(reason);
+        ledger.exitEma[row] = indexState.getEmaVal(kv.emaPeriod);
+        ledger.exitRsi[row] = indexState.getRsiVal(kv.rsiPeriod);
+        ledger.exitPivot[row] = indexState.pivotsInitialized ? indexState.pp : Double.NaN;
+        overAllTradeMetric = TradeMetric.squared(this, kv, bar, exitPrice, reason, reasonInfo);
         tradeSquared = true;
     }
 
     public void exit(String reason, String reasonInfo) {
+        exit(reason, reasonInfo, indexState.ohlc.close);
+    }
+
+    // squared on the current bar at exitPrice rather than the bar's close
+    public void exit(String reason, String reasonInfo, float exitPrice) {
         if (!this.tradeSquared) {
-            this.exitTrade(reason, reasonInfo);
+            this.exitTrade(reason, reasonInfo, exitPrice);
         }
     }
     //regime
 
     public void setRegime(String r){ this.regime = (r==null? "Null" : r); }
     public String getRegime(){ return regime; }
-}
\ No newline at end of file
+}
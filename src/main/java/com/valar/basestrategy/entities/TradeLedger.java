@@ -0,0 +1,105 @@
+package com.valar.basestrategy.entities;
+
+import java.util.Arrays;
+
+/**
+ * Trades of one StrategyImpl as growable primitive columns, one row per trade: entry/exit bar index and close,
+ * side, levels, the EMA/RSI/pivot snapshots and the exit reason. TradeEntity is a flyweight over a row. The
+ * entry bar is kept as the line it was read from, so nothing is copied or re-parsed per trade. A row is
+ * released once nothing reads it any more (squared, sweep path written) and reused by a later entry.
+ */
+public class TradeLedger {
+    static final String[] REASONS = {"StopLoss", "Target", "ForceExit", "EndTime", "MaxHolding"};
+
+    private int size, freeCount;
+    private int[] free = new int[16];
+
+    int[] entryBar = new int[16], exitBar = new int[16];
+    char[] lOrS = new char[16];
+    byte[] reason = new byte[16];
+    String[] entryLine = new String[16];
+    float[] entryClose = new float[16], exitClose = new float[16], pdh = new float[16], pdl = new float[16],
+            cdh = new float[16], cdl = new float[16], profit = new float[16], profitPercent = new float[16],
+            maxProfit = new float[16];
+    double[] stopLoss = new double[16], target = new double[16], entryEma = new double[16], entryRsi = new double[16],
+            entryPivot = new double[16], exitEma = new double[16], exitRsi = new double[16], exitPivot = new double[16],
+            hhv = new double[16], llv = new double[16], dayAtrPercent = new double[16], dayAtrPercentage = new double[16];
+
+    // a blank row: a released one if any
+    int add(){
+        int row;
+        if(freeCount > 0) row = free[--freeCount];
+        else {
+            if(size == entryBar.length) grow(size * 2);
+            row = size++;
+        }
+        exitBar[row] = -1;
+        reason[row] = -1;
+        exitClose[row] = 0;
+        profit[row] = 0;
+        profitPercent[row] = 0;
+        maxProfit[row] = Float.NEGATIVE_INFINITY;
+        stopLoss[row] = 0;
+        target[row] = 0;
+        entryEma[row] = entryRsi[row] = entryPivot[row] = 0;
+        exitEma[row] = exitRsi[row] = exitPivot[row] = 0;
+        hhv[row] = llv[row] = 0;
+        pdh[row] = pdl[row] = cdh[row] = cdl[row] = 0;
+        return row;
+    }
+
+    // the trade's row may be reused; the handle must not be read again
+    public void release(TradeEntity trade){
+        if(trade.row < 0) return;
+        entryLine[trade.row] = null;
+        if(freeCount == free.length) free = Arrays.copyOf(free, freeCount * 2);
+        free[freeCount++] = trade.row;
+        trade.row = -1;
+    }
+
+    public void clear(){
+        Arrays.fill(entryLine, 0, size, null);
+        size = 0;
+        freeCount = 0;
+    }
+
+    // rows in use
+    public int live(){
+        return size - freeCount;
+    }
+
+    static byte reasonCode(String reason){
+        for(byte i = 0; i < REASONS.length; i++)
+            if(REASONS[i].equals(reason)) return i;
+        return -1;
+    }
+
+    private void grow(int n){
+        entryBar = Arrays.copyOf(entryBar, n);
+        exitBar = Arrays.copyOf(exitBar, n);
+        lOrS = Arrays.copyOf(lOrS, n);
+        reason = Arrays.copyOf(reason, n);
+        entryLine = Arrays.copyOf(entryLine, n);
+        entryClose = Arrays.copyOf(entryClose, n);
+        exitClose = Arrays.copyOf(exitClose, n);
+        pdh = Arrays.copyOf(pdh, n);
+        pdl = Arrays.copyOf(pdl, n);
+        cdh = Arrays.copyOf(cdh, n);
+        cdl = Arrays.copyOf(cdl, n);
+        profit = Arrays.copyOf(profit, n);
+        profitPercent = Arrays.copyOf(profitPercent, n);
+        maxProfit = Arrays.copyOf(maxProfit, n);
+        stopLoss = Arrays.copyOf(stopLoss, n);
+        target = Arrays.copyOf(target, n);
+        entryEma = Arrays.copyOf(entryEma, n);
+        entryRsi = Arrays.copyOf(entryRsi, n);
+        entryPivot = Arrays.copyOf(entryPivot, n);
+        exitEma = Arrays.copyOf(exitEma, n);
+        exitRsi = Arrays.copyOf(exitRsi, n);
+        exitPivot = Arrays.copyOf(exitPivot, n);
+        hhv = Arrays.copyOf(hhv, n);
+        llv = Arrays.copyOf(llv, n);
+        dayAtrPercent = Arrays.copyOf(dayAtrPercent, n);
+        dayAtrPercentage = Arrays.copyOf(dayAtrPercentage, n);
+    }
+}
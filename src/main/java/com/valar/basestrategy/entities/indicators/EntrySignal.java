@@ -0,0 +1,38 @@
+package com.valar.basestrategy.entities.indicators;
+
+import com.valar.basestrategy.entities.Ohlc;
+import com.valar.basestrategy.state.minute.State;
+import com.valar.basestrategy.utils.KeyValues;
+
+import java.util.BitSet;
+
+/**
+ * The pivot entry predicate of StrategyImpl evaluated once over a state's bars, for every keystore with the same
+ * side, EMA/RSI periods and RSI threshold; keystores then only apply their own time window, overlap and gap
+ * filters. Bars are replayed through an Ohlc from the first line, as a walk does, for the prior-day high/low.
+ *   long:  high > prevDayHigh && rsi > rsiLong && close > ema
+ *   short: low < prevDayLow && rsi < rsiShort && close < ema
+ */
+public class EntrySignal {
+
+    public static String key(KeyValues kv){
+        boolean isLong = kv.tradeType.equals("l");
+        return kv.tradeType + "," + kv.emaPeriod + "," + kv.rsiPeriod + "," + (isLong ? kv.rsiLong : kv.rsiShort);
+    }
+
+    // bit i set when the predicate holds on line i
+    public static BitSet compute(State state, KeyValues kv){
+        BitSet fires = new BitSet(state.lines.size());
+        boolean isLong = kv.tradeType.equals("l");
+        if(!isLong && !kv.tradeType.equals("s")) return fires;
+        Ohlc bar = new Ohlc();
+        for(int i = 0; i < state.lines.size(); i++){
+            bar.update(state.lines.get(i));
+            double emaVal = state.getEmaValAt(kv.emaPeriod, i), rsiVal = state.getRsiValAt(kv.rsiPeriod, i);
+            if(isLong ? bar.high>bar.prevDayHigh && rsiVal > kv.rsiLong && bar.close > emaVal
+                    : bar.low<bar.prevDayLow && rsiVal < kv.rsiShort && bar.close < emaVal)
+                fires.set(i);
+        }
+        return fires;
+    }
+}
@@ -0,0 +1,84 @@
+package com.valar.basestrategy.entities.indicators;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Segment trees of range-max highs and range-min lows over a series' lines, answering "first bar at or after
+ * from whose high reaches / low falls to a level" in O(log n). Comparisons are made in double against the
+ * float bar values, the same way bar.high >= target is evaluated on a walk.
+ */
+public class FirstTouchIndex {
+    private final int n, leaves;
+    private final float[] maxHigh, minLow;
+
+    public FirstTouchIndex(List<String> lines){
+        // one extra entry repeating the last bar: a finished state is iterated once more on its last bar
+        n = lines.size() + (lines.isEmpty() ? 0 : 1);
+        int size = 1;
+        while(size < Math.max(1, n)) size <<= 1;
+        leaves = size;
+        maxHigh = new float[2 * leaves];
+        minLow = new float[2 * leaves];
+        Arrays.fill(maxHigh, Float.NEGATIVE_INFINITY);
+        Arrays.fill(minLow, Float.POSITIVE_INFINITY);
+        for(int i = 0; i < n; i++){
+            String ln = lines.get(Math.min(i, lines.size() - 1));
+            int c1 = ln.indexOf(','), c2 = ln.indexOf(',', c1 + 1), c3 = ln.indexOf(',', c2 + 1), c4 = ln.indexOf(',', c3 + 1);
+            maxHigh[leaves + i] = Float.parseFloat(ln.substring(c2 + 1, c3));
+            minLow[leaves + i] = Float.parseFloat(ln.substring(c3 + 1, c4));
+        }
+        for(int i = leaves - 1; i > 0; i--){
+            maxHigh[i] = Math.max(maxHigh[2 * i], maxHigh[2 * i + 1]);
+            minLow[i] = Math.min(minLow[2 * i], minLow[2 * i + 1]);
+        }
+    }
+
+    // first bar >= from with high >= level, -1 if none
+    public int firstHighAtLeast(int from, double level){
+        return first(from, level, true);
+    }
+
+    // first bar >= from with low <= level, -1 if none
+    public int firstLowAtMost(int from, double level){
+        return first(from, level, false);
+    }
+
+    // first bar >= from where a trade with these levels is stopped out or reaches its target, -1 if none
+    public int firstTouch(int from, char lOrS, double stopLoss, double target){
+        int stop, reach;
+        if(lOrS == 'l'){
+            stop = firstLowAtMost(from, stopLoss);
+            reach = firstHighAtLeast(from, target);
+        }else if(lOrS == 's'){
+            stop = firstHighAtLeast(from, stopLoss);
+            reach = firstLowAtMost(from, target);
+        }else return -1;
+        if(stop == -1) return reach;
+        if(reach == -1) return stop;
+        return Math.min(stop, reach);
+    }
+
+    private int first(int from, double level, boolean high){
+        if(from < 0) from = 0;
+        if(from >= n) return -1;
+        int i = leaves + from;
+        while(true){
+            if(hits(i, level, high)){
+                while(i < leaves){
+                    i <<= 1;
+                    if(!hits(i, level, high)) i++;
+                }
+                return i - leaves;
+            }
+            // climb while a right child, then step to the next subtree on the right
+            while((i & 1) == 1) i >>= 1;
+            if(i == 0) return -1;
+            i++;
+        }
+    }
+
+    private boolean hits(int node, double level, boolean high){
+        return high ? maxHigh[node] >= level : minLow[node] <= level;
+    }
+}
@@ -0,0 +1,93 @@
+package com.valar.basestrategy.entities.indicators;
+
+import java.util.List;
+
+import static com.valar.basestrategy.utils.ValarUtils.getDateKey;
+
+/**
+ * For each bar of a higher-period series, the range of 1-min bars it was built from, so a bar whose range holds
+ * both a trade's stop and target can be replayed minute by minute to see which was reached first, and an exit
+ * priced where the minutes reached its level rather than at the bar's close. A bar covers
+ * the minutes from its start up to its endDnt column (lines built by updateLinesAccToPeriod), else up to the
+ * next bar of the day, else to the end of its day.
+ */
+public class IntrabarIndex {
+    private final int[] from, to;
+    private final float[] minuteOpen, minuteHigh, minuteLow;
+
+    public IntrabarIndex(List<String> lines, List<String> minuteLines){
+        int m = minuteLines.size();
+        long[] minuteKeys = new long[m];
+        minuteOpen = new float[m];
+        minuteHigh = new float[m];
+        minuteLow = new float[m];
+        for(int i = 0; i < m; i++){
+            String ln = minuteLines.get(i);
+            int c1 = ln.indexOf(','), c2 = ln.indexOf(',', c1 + 1), c3 = ln.indexOf(',', c2 + 1), c4 = ln.indexOf(',', c3 + 1);
+            minuteKeys[i] = key(ln.substring(0, c1));
+            minuteOpen[i] = Float.parseFloat(ln.substring(c1 + 1, c2));
+            minuteHigh[i] = Float.parseFloat(ln.substring(c2 + 1, c3));
+            minuteLow[i] = Float.parseFloat(ln.substring(c3 + 1, c4));
+        }
+
+        int n = lines.size();
+        // one extra entry repeating the last bar: a finished state is iterated once more on its last bar
+        from = new int[n + 1];
+        to = new int[n + 1];
+        for(int k = 0; k < n; k++){
+            String[] splits = lines.get(k).split(",");
+            long start = key(splits[0]), end;
+            if(splits.length >= 7) end = key(splits[6]);
+            else if(k + 1 < n && lines.get(k + 1).regionMatches(0, splits[0], 0, 8)) end = key(lines.get(k + 1).substring(0, 14));
+            else end = start - start % 1440 + 1440;
+            from[k] = lowerBound(minuteKeys, start);
+            to[k] = lowerBound(minuteKeys, end);
+        }
+        if(n > 0){
+            from[n] = from[n - 1];
+            to[n] = to[n - 1];
+        }
+    }
+
+    // whether the stop is reached no later than the target within bar, replaying its minutes; true when the
+    // minutes do not settle it, the same call the bar alone would make
+    public boolean stopFirst(int bar, char lOrS, double stopLoss, double target){
+        if(bar < 0 || bar >= from.length) return true;
+        for(int i = from[bar]; i < to[bar]; i++){
+            boolean hitSL, hitTarget;
+            if(lOrS == 'l'){ hitSL = minuteLow[i] <= stopLoss; hitTarget = minuteHigh[i] >= target; }
+            else { hitSL = minuteHigh[i] >= stopLoss; hitTarget = minuteLow[i] <= target; }
+            if(hitSL) return true;
+            if(hitTarget) return false;
+        }
+        return true;
+    }
+
+    // the price a stop or target at level fills at within bar: level itself, or the open of the first minute that
+    // reached it when that minute opened beyond it. below: reached by a fall (long stop, short target). NaN when
+    // no minute of bar reaches level
+    public float fillPrice(int bar, boolean below, double level){
+        if(bar < 0 || bar >= from.length) return Float.NaN;
+        for(int i = from[bar]; i < to[bar]; i++){
+            if(below && minuteLow[i] <= level) return (float) Math.min(minuteOpen[i], level);
+            if(!below && minuteHigh[i] >= level) return (float) Math.max(minuteOpen[i], level);
+        }
+        return Float.NaN;
+    }
+
+    // dd-MM-yy HH:mm as minutes on a yyMMdd day key
+    private static long key(String dnt){
+        int mins = dnt.length() >= 14 ? ((dnt.charAt(9)-'0')*10 + (dnt.charAt(10)-'0'))*60 + (dnt.charAt(12)-'0')*10 + (dnt.charAt(13)-'0') : 0;
+        return (long) getDateKey(dnt) * 1440 + mins;
+    }
+
+    private static int lowerBound(long[] keys, long key){
+        int lo = 0, hi = keys.length;
+        while(lo < hi){
+            int mid = (lo + hi) >>> 1;
+            if(keys[mid] < key) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+}
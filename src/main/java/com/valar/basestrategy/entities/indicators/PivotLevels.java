@@ -0,0 +1,161 @@
+package com.valar.basestrategy.entities.indicators;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-day support/resistance table for a whole series, built in one pass over its lines.
+ * Levels of a day come from the previous day (classic, Camarilla and Fibonacci pivots, prior-day
+ * high/low/close) and from the previous week (high/low). Each day's levels are kept sorted so the
+ * nearest level above or below a price is a binary search.
+ */
+public class PivotLevels {
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("dd-MM-yy");
+    private static final int LEVELS_PER_DAY = 26;
+
+    private final Map<String,Integer> dayIndex = new HashMap<>();
+    public final float[] pp, r1, r2, s1, s2;
+    private final float[] levels;
+    private final int[] from;
+
+    public PivotLevels(List<String> lines){
+        // day high/low/close and week bounds in one pass
+        int capacity = 16;
+        float[] high = new float[capacity], low = new float[capacity], close = new float[capacity];
+        long[] week = new long[capacity];
+        int days = 0;
+        String lastDate = null;
+        for(String ln : lines){
+            int comma = ln.indexOf(',');
+            String dnt = ln.substring(0, comma);
+            int space = dnt.indexOf(' ');
+            String date = space == -1 ? dnt : dnt.substring(0, space);
+            String[] splits = ln.split(",");
+            float h = Float.parseFloat(splits[2]), l = Float.parseFloat(splits[3]), c = Float.parseFloat(splits[4]);
+            if(!date.equals(lastDate)){
+                if(days == capacity){
+                    capacity *= 2;
+                    high = Arrays.copyOf(high, capacity);
+                    low = Arrays.copyOf(low, capacity);
+                    close = Arrays.copyOf(close, capacity);
+                    week = Arrays.copyOf(week, capacity);
+                }
+                dayIndex.put(date, days);
+                week[days] = LocalDate.parse(date, DATE_FORMAT).with(DayOfWeek.MONDAY).toEpochDay();
+                high[days] = h;
+                low[days] = l;
+                days++;
+                lastDate = date;
+            }else{
+                high[days-1] = Math.max(high[days-1], h);
+                low[days-1] = Math.min(low[days-1], l);
+            }
+            close[days-1] = c;
+        }
+
+        pp = new float[days];
+        r1 = new float[days];
+        r2 = new float[days];
+        s1 = new float[days];
+        s2 = new float[days];
+        levels = new float[days * LEVELS_PER_DAY];
+        from = new int[days + 1];
+
+        float weekHigh = -Float.MAX_VALUE, weekLow = Float.MAX_VALUE,
+                prevWeekHigh = Float.NaN, prevWeekLow = Float.NaN;
+        int n = 0;
+        for(int d = 0; d < days; d++){
+            from[d] = n;
+            if(d > 0 && week[d] != week[d-1]){
+                prevWeekHigh = weekHigh;
+                prevWeekLow = weekLow;
+                weekHigh = -Float.MAX_VALUE;
+                weekLow = Float.MAX_VALUE;
+            }
+            if(d > 0){
+                float h = high[d-1], l = low[d-1], c = close[d-1], range = h - l;
+                float p = (h + l + c) / 3f;
+                pp[d] = p;
+                r1[d] = 2 * p - l;
+                s1[d] = 2 * p - h;
+                r2[d] = p + range;
+                s2[d] = p - range;
+
+                // classic
+                levels[n++] = p;
+                levels[n++] = r1[d];
+                levels[n++] = r2[d];
+                levels[n++] = h + 2 * (p - l);
+                levels[n++] = s1[d];
+                levels[n++] = s2[d];
+                levels[n++] = l - 2 * (h - p);
+                // camarilla
+                levels[n++] = c + range * 1.1f / 12;
+                levels[n++] = c + range * 1.1f / 6;
+                levels[n++] = c + range * 1.1f / 4;
+                levels[n++] = c + range * 1.1f / 2;
+                levels[n++] = c - range * 1.1f / 12;
+                levels[n++] = c - range * 1.1f / 6;
+                levels[n++] = c - range * 1.1f / 4;
+                levels[n++] = c - range * 1.1f / 2;
+                // fibonacci
+                levels[n++] = p + 0.382f * range;
+                levels[n++] = p + 0.618f * range;
+                levels[n++] = p + range;
+                levels[n++] = p - 0.382f * range;
+                levels[n++] = p - 0.618f * range;
+                levels[n++] = p - range;
+                // prior day
+                levels[n++] = h;
+                levels[n++] = l;
+                levels[n++] = c;
+                // prior week
+                if(!Float.isNaN(prevWeekHigh)){
+                    levels[n++] = prevWeekHigh;
+                    levels[n++] = prevWeekLow;
+                }
+                Arrays.sort(levels, from[d], n);
+            }
+            weekHigh = Math.max(weekHigh, high[d]);
+            weekLow = Math.min(weekLow, low[d]);
+        }
+        from[days] = n;
+    }
+
+    // -1 if the date is not part of the series
+    public int getDay(String date){
+        Integer day = dayIndex.get(date);
+        return day == null ? -1 : day;
+    }
+
+    public boolean hasLevels(int day){
+        return day >= 0 && from[day] < from[day + 1];
+    }
+
+    // smallest level strictly above price, NaN if none
+    public float above(int day, float price){
+        int lo = from[day], hi = from[day + 1];
+        while(lo < hi){
+            int mid = (lo + hi) >>> 1;
+            if(levels[mid] <= price) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo < from[day + 1] ? levels[lo] : Float.NaN;
+    }
+
+    // largest level strictly below price, NaN if none
+    public float below(int day, float price){
+        int lo = from[day], hi = from[day + 1];
+        while(lo < hi){
+            int mid = (lo + hi) >>> 1;
+            if(levels[mid] < price) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo > from[day] ? levels[lo - 1] : Float.NaN;
+    }
+}
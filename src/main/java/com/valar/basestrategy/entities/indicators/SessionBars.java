@@ -0,0 +1,30 @@
+package com.valar.basestrategy.entities.indicators;
+
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Where each bar of a series sits in its session: minute of day (-1 for day bars), whether its close is
+ * non-zero (the walk only iterates those) and whether it is the last bar of its day. Built in one light pass
+ * over the lines, without splitting them.
+ */
+public class SessionBars {
+    public final int[] mins;
+    public final BitSet nonZeroClose, lastOfDay;
+
+    public SessionBars(List<String> lines){
+        int n = lines.size();
+        mins = new int[n];
+        nonZeroClose = new BitSet(n);
+        lastOfDay = new BitSet(n);
+        for(int i = 0; i < n; i++){
+            String ln = lines.get(i);
+            int c1 = ln.indexOf(','), c4 = c1;
+            for(int c = 0; c < 3; c++) c4 = ln.indexOf(',', c4 + 1);
+            int c5 = ln.indexOf(',', c4 + 1);
+            mins[i] = c1 >= 14 ? ((ln.charAt(9)-'0')*10 + (ln.charAt(10)-'0'))*60 + (ln.charAt(12)-'0')*10 + (ln.charAt(13)-'0') : -1;
+            if(Float.parseFloat(ln.substring(c4 + 1, c5 == -1 ? ln.length() : c5)) != 0) nonZeroClose.set(i);
+            if(i + 1 == n || !lines.get(i + 1).regionMatches(0, ln, 0, 8)) lastOfDay.set(i);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.valar.basestrategy.service;
+
+import com.valar.basestrategy.entities.indicators.EntrySignal;
+import com.valar.basestrategy.entities.indicators.SessionBars;
+import com.valar.basestrategy.state.minute.State;
+import com.valar.basestrategy.utils.KeyValues;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Entry filters of the keystores on one candle period as parallel primitive arrays, indexed like the period's
+ * StrategyImpl list. For a bar, entryCandidates marks in one pass the keystores whose entry signal fires inside
+ * their startTime..cutOffTime window; the others skip the entry checks of StrategyImpl.iterate. Keystores
+ * without a cached signal (EntrySignal) are always marked and decide per bar as before.
+ *
+ * markActiveBars also lists the bars a walk must not step over while none of the period's keystores holds a
+ * trade, so it can jump from one to the next (State.advanceTo).
+ */
+public class KeystoreBank {
+    private final int size;
+    private final int[] startTime, cutOffTime, signal;
+    private final BitSet[] signals;
+    private final boolean[] signalFires;
+    private final long[] candidates;
+    private final int bars;
+    private final boolean perBarEntries;
+    private BitSet activeBars;
+
+    public KeystoreBank(List<KeyValues> keyValues, State state){
+        size = keyValues.size();
+        startTime = new int[size];
+        cutOffTime = new int[size];
+        signal = new int[size];
+        List<BitSet> distinct = new ArrayList<>();
+        boolean perBar = false;
+        for(int k = 0; k < size; k++){
+            KeyValues kv = keyValues.get(k);
+            startTime[k] = kv.startTime;
+            cutOffTime[k] = kv.cutOffTime;
+            BitSet fires = kv.positional && kv.usePivots && kv.rsiPeriod != 0 ? state.entrySignals.get(EntrySignal.key(kv)) : null;
+            if(fires == null){
+                signal[k] = -1;
+                perBar |= kv.positional && kv.usePivots && kv.rsiPeriod != 0;
+                continue;
+            }
+            int index = distinct.indexOf(fires);
+            if(index == -1){
+                index = distinct.size();
+                distinct.add(fires);
+            }
+            signal[k] = index;
+        }
+        signals = distinct.toArray(new BitSet[0]);
+        signalFires = new boolean[signals.length];
+        candidates = new long[(size + 63) >>> 6];
+        bars = state.lines.size();
+        perBarEntries = perBar;
+    }
+
+    // bars at or after from where a keystore may enter (its signal fires inside its window), the day's first bar
+    // with a close (pivot day switch), its first such bar at or after each startTime (day ATR check), the day's
+    // last bar (intraday keystores are reset there) and the stopDnt bar. Not marked, and nothing to skip,
+    // when some keystore evaluates its entry per bar or the bars have no time
+    public void markActiveBars(State state, int from, String stopDnt){
+        activeBars = null;
+        SessionBars session = state.sessionBars;
+        if(perBarEntries || session == null || from >= bars || session.mins[from] == -1) return;
+        BitSet active = new BitSet(bars);
+        for(int k = 0; k < size; k++){
+            if(signal[k] == -1) continue;
+            BitSet fires = signals[signal[k]];
+            for(int b = fires.nextSetBit(from); b != -1 && b < bars; b = fires.nextSetBit(b + 1))
+                if(session.mins[b] >= startTime[k] && session.mins[b] <= cutOffTime[k]) active.set(b);
+        }
+        int[] starts = Arrays.stream(startTime).distinct().toArray();
+        boolean[] started = new boolean[starts.length];
+        boolean dayOpened = false;
+        for(int b = from; b < bars; b++){
+            if(session.nonZeroClose.get(b)){
+                if(!dayOpened) active.set(b);
+                dayOpened = true;
+                for(int s = 0; s < starts.length; s++)
+                    if(!started[s] && session.mins[b] >= starts[s]){
+                        started[s] = true;
+                        active.set(b);
+                    }
+            }
+            if(session.lastOfDay.get(b)){
+                active.set(b);
+                dayOpened = false;
+                Arrays.fill(started, false);
+            }
+            if(state.lines.get(b).startsWith(stopDnt + ",")) active.set(b);
+        }
+        activeBars = active;
+    }
+
+    // first marked bar at or after bar, bar itself when nothing is marked
+    public int nextActiveBar(int bar){
+        if(activeBars == null) return bar;
+        int next = activeBars.nextSetBit(bar);
+        return next == -1 ? bar : next;
+    }
+
+    // bit k set when keystore k may enter on bar (line index) at mins; the array is reused across bars
+    public long[] entryCandidates(int bar, int mins){
+        Arrays.fill(candidates, 0);
+        boolean past = bar >= bars; // the finished state's extra pass: left to the keystores
+        for(int s = 0; s < signals.length; s++) signalFires[s] = past || signals[s].get(bar);
+        for(int k = 0; k < size; k++){
+            boolean fires = signal[k] == -1 || (signalFires[signal[k]] && mins >= startTime[k] && mins <= cutOffTime[k]);
+            if(fires) candidates[k >>> 6] |= 1L << k;
+        }
+        return candidates;
+    }
+
+    public static boolean isSet(long[] candidates, int k){
+        return (candidates[k >>> 6] & (1L << k)) != 0;
+    }
+}
@@ -41,6 +41,31 @@ public class RegimeService {
         this.benchRetQ= new ArrayDeque<>(n);
     }
 
+    // RegimeByDay.csv for the full history, written once per run before any keystore runs
+    public static void writeRegimeHistory() {
+        try {
+            String outPath = properties.getProperty("regimeOutputPath");
+            String bnPath  = properties.getProperty("regimeDayPath");
+            String nfPath  = properties.getProperty("regimeBenchmarkDayPath");
+            if (bnPath == null || nfPath == null) throw new IllegalArgumentException("Missing regimeDayPath or regimeBenchmarkDayPath");
+
+            DayIterator bnIter = new DayIterator(bnPath);
+            DayIterator nfIter = new DayIterator(nfPath);
+
+            int windowN       = Integer.parseInt(properties.getProperty("regimeWindowN"));
+            double volThr  = Double.parseDouble(properties.getProperty("regimeVolThreshold"));
+            double corrThr = Double.parseDouble(properties.getProperty("regimeCorrThreshold"));
+
+            RegimeDetector detector = new RegimeDetector(windowN, volThr, corrThr);
+
+            try (RegimeWriter regimeWriter = new RegimeWriter(outPath)) {
+                new RegimeService(bnIter, nfIter, detector).writeAllHistory(regimeWriter);
+            }
+        } catch (Exception e) {
+            throw new RuntimeException("Regime init failed", e);
+        }
+    }
+
     // Computes regime at the start of each matched day using "previous N days".
 
     public void writeAllHistory(RegimeWriter out) {
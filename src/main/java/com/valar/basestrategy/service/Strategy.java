@@ -8,27 +8,33 @@ import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
-import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.Callable;
 import java.util.stream.Collectors;
 
 import com.valar.basestrategy.entities.Ohlc;
 import com.valar.basestrategy.state.minute.IndexState;
 import com.valar.basestrategy.state.minute.State;
-import com.valar.basestrategy.tradeAndDayMetrics.DayMetric;
+import com.valar.basestrategy.tradeAndDayMetrics.DayExitLog;
+import com.valar.basestrategy.tradeAndDayMetrics.DayMetricFold;
+import com.valar.basestrategy.tradeAndDayMetrics.KeystoreClusters;
+import com.valar.basestrategy.tradeAndDayMetrics.DayMetricSink;
 import com.valar.basestrategy.tradeAndDayMetrics.OverAllMetric;
+import com.valar.basestrategy.tradeAndDayMetrics.StockDayColumns;
 import com.valar.basestrategy.utils.KeyValues;
+import com.valar.basestrategy.utils.PrintWriters;
+import com.valar.basestrategy.utils.Workers;
 
 public class Strategy {
     private String dateTimeFormat = "dd-MM-yy HH:mm";
     private DateFormat dateFormat = new SimpleDateFormat("dd-MM-yy");
-    private boolean positional,candlePeriodBelongsToDay;
-    private int candlePeriod;
     String vixFilePath =properties.getProperty("vixFilePath");
-    private DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd-MM-yy");
     private static String[] stocksFolders;
     public static String runTill = properties.getProperty("runTill")+" 15:30";
+    // keystores differing only in costPercent/hpCostPercent share one simulation (StrategyImpl.linkCostVariants)
+    private static final boolean reuseCostVariants = Boolean.parseBoolean(properties.getProperty("reuseCostVariants","true"));
+    // while no keystore of the finest period holds a trade, the walk jumps to the next bar where one may enter
+    private static final boolean skipIdleBars = Boolean.parseBoolean(properties.getProperty("skipIdleBars","true"));
 
     static{
         int[] periods = {1,5,15,30,45,60,75,375};
@@ -46,37 +52,83 @@ public class Strategy {
     class OverAllMetricInfo{
         public OverAllMetric overAllMetric = new OverAllMetric();
         public Map<String,OverAllMetric> stockOverAllMetric = new HashMap<>();
-        public Map<String,DayMetric> dayMetricsMap = new LinkedHashMap<>();
-        public Map<String,Map<String,DayMetric>> stockDayMetricsMap = new HashMap<>();
+        // the combined days, folded (and their DayWise rows written) as they complete, see lastInstrumentRuns
+        public DayMetricFold dayFold = new DayMetricFold(overAllMetric,true);
+        public Map<String,Integer> stockDaySlots = new HashMap<>();
         String keystoreLn;
         float costPercent;
-        public OverAllMetricInfo(String keystoreLn,float costPercent){
+        int keystoreRow;
+        public OverAllMetricInfo(String keystoreLn,float costPercent,int keystoreRow){
             this.keystoreLn = keystoreLn;
             this.costPercent = costPercent;
+            this.keystoreRow = keystoreRow;
+            overAllMetric.keystoreRow = keystoreRow;
         }
 
+        // an instrument's days come in date order and are folded as they complete (StockDayColumns); instruments
+        // sharing a symbol add to one slot in turn, so theirs are held to the end
         public void addStockDayMetricMap(String symbol){
             symbol = symbol.contains(" ")?symbol.split(" ")[0]:symbol;
-            stockDayMetricsMap.put(symbol,new LinkedHashMap<String,DayMetric>());
-            stockOverAllMetric.put(symbol,new OverAllMetric(symbol));
+            Integer slot = stockDaySlots.get(symbol);
+            if(slot!=null) {
+                stockDays.hold(slot);
+                return;
+            }
+            OverAllMetric stockMetric = new OverAllMetric(symbol);
+            stockMetric.keystoreRow = keystoreRow;
+            stockDaySlots.put(symbol,stockDays.addSlot(stockMetric));
+            stockOverAllMetric.put(symbol,stockMetric);
+        }
+    }
+
+    // day maps one walk adds its trades to, per keystore sno: the combined map and the instrument's own map
+    class DayMetricsMaps{
+        Map<Integer,DayMetricSink> dayMetricsMaps = new HashMap<>();
+        Map<Integer,DayMetricSink> stockDayMetricsMaps = new HashMap<>();
+        Map<Integer,Integer> stockSlots = new HashMap<>();
+        // an instrument run alongside others: its exits into what other instruments add to as well (the combined
+        // days, held stock slots), replayed in instrument order
+        DayExitLog ownExits,ownStockExits;
+        // the rows of an instrument run on its own, written out when its maps are merged
+        PrintWriters.Buffer buffer;
+
+        // the keystores' combined maps and the maps of symbol
+        DayMetricsMaps(String symbol){
+            String key = symbol.contains(" ")?symbol.split(" ")[0]:symbol;
+            overAllMetricInfoMap.forEach((sno,info) -> {
+                dayMetricsMaps.put(sno,info.dayFold);
+                stockSlots.put(sno,info.stockDaySlots.get(key));
+                stockDayMetricsMaps.put(sno,stockDays.sink(info.stockDaySlots.get(key)));
+            });
+        }
+
+        // for an instrument run alongside others
+        void logSharedExits(){
+            ownExits = new DayExitLog();
+            ownStockExits = new DayExitLog();
+            dayMetricsMaps.replaceAll((sno,sink) -> ownExits);
+            stockDayMetricsMaps.replaceAll((sno,sink) -> stockDays.isHeld(stockSlots.get(sno))?ownStockExits:sink);
+        }
+
+        void replay(){
+            ownExits.replayInto(sno -> overAllMetricInfoMap.get(sno).dayFold);
+            ownStockExits.replayInto(sno -> stockDays.sink(stockSlots.get(sno)));
         }
     }
 
     public Map<Integer,OverAllMetricInfo> overAllMetricInfoMap = new HashMap<>();
+    private final StockDayColumns stockDays = new StockDayColumns();
     private List<KeyValues> runForKeyAttribs;
 
     private Set<Integer> globakCandlePeriodsInKeystore = new HashSet<>();
 
-    public Strategy(boolean positional,int candlePeriod,List<KeyValues> runForKeyAttribs){
-        this.positional = positional;
-        this.candlePeriod = candlePeriod;
+    // keystores may mix candle periods and positional/intraday modes, all of them run in one walk
+    public Strategy(List<KeyValues> runForKeyAttribs){
         this.runForKeyAttribs = runForKeyAttribs;
         for(KeyValues kv : runForKeyAttribs){
-            overAllMetricInfoMap.put(kv.sno,new OverAllMetricInfo(kv.ln,kv.costPercent));
+            overAllMetricInfoMap.put(kv.sno,new OverAllMetricInfo(kv.ln,kv.costPercent,kv.row));
             globakCandlePeriodsInKeystore.addAll(List.of(kv.candlePeriod));
         }
-        candlePeriodBelongsToDay = candlePeriod==375;
-
     }
 
     /*private void continueFurtherReadingForSameExpiryFiles(String date,Map<String,OptionState> allOptionStates){
@@ -85,150 +137,228 @@ public class Strategy {
     }*/
 
     public void apply()throws Exception{
-        String stocksMinFilesPath = stocksFolders[0],
-                stocksDayFilesPath = properties.getProperty("stocksDayFilesPath");
+        String stocksMinFilesPath = stocksFolders[0];
         List<String> runForInstruments = Files.readAllLines(Paths.get(properties.getProperty("instrumentsFile")));
         List<String> files = new ArrayList<>(getAllFilesOfFolder(stocksMinFilesPath));
         files.add(indexFile.split("/")[1]);
-        files.stream().filter(file->(runForInstruments.contains("BankNifty") && file.startsWith("BankNifty"))
+        List<String> instruments = files.stream().filter(file->(runForInstruments.contains("BankNifty") && file.startsWith("BankNifty"))
                         || runForInstruments.contains(file.replace(".csv","")))
-                .forEach(file -> {
-                    boolean isIndex = file.startsWith("Bank");
-                    String dayFilePath = isIndex?indexDayFile:stocksDayFilesPath+file;
-                    Map<Integer, IndexState> indexStateMap = new HashMap<>();
-
-                    if(isIndex) {
-                        String bnBaseFolderPath = properties.getProperty("" +
-                                "indexFilePath");
-                        List<String> periodicFiles = getAllFilesOfFolder(bnBaseFolderPath);
-                        periodicFiles.stream().filter(pf -> pf.startsWith("BankNifty") && pf.contains("min"))
-                                .forEach(pf -> {
-                                    int duration = Integer.parseInt(pf.split(" ")[1].replace("min", ""));
-                                    if(globakCandlePeriodsInKeystore.contains(duration)) {
-                                        indexStateMap.put(
-                                                duration,
-                                                new IndexState(pf.replace(".csv", ""), bnBaseFolderPath + pf, 0, dateTimeFormat, true)
-                                        );
-                                    }
-                                });
-                    }else{
-
-                        Arrays.stream(stocksFolders).forEach(bf -> {
-                            int duration = Integer.parseInt(bf.split(" ")[1].replace("min", ""));
-                            if(globakCandlePeriodsInKeystore.contains(duration)) {
-                                indexStateMap.put(
-                                        duration,
-                                        new IndexState(file.replace(".csv", ""), bf + file, 0, dateTimeFormat, true)
-                                );
-                            }
-                        });
-                    }
-
-                    indexStateMap.entrySet().stream().filter(entry->entry.getKey()==375)
-                            .forEach(entry->{
-                                entry.getValue().readTillDate(false,true,"09-01-15 15:29");
-                            });
-
-                    for(KeyValues kv : runForKeyAttribs) {
-                        overAllMetricInfoMap.get(kv.sno).addStockDayMetricMap(file.replace(".csv",""));
-
-                        IndexState indexState1 = indexStateMap.get(kv.candlePeriod); //15 35000 data
-
-                        indexState1.loadIndicators(kv.emaPeriod,kv.rsiPeriod);
-
-
-                    }
-                    Map<String, Double> dayAtrMap = new HashMap<>();
-                    Map<String , Double > dayAtrMapPercentage=new HashMap<>();
-
-                    try {
-                        dayAtrMapPercentage = Files.readAllLines(Paths.get(dayFilePath)).stream()
-//                                .skip(14)
-                                .map(line -> line.split(",")) // Split by comma (assuming CSV format)
-                                .collect(Collectors.toMap(
-                                        cols -> cols[0],               // Key: date column
-                                        cols -> Double.parseDouble(cols[6])
-                                ));
-                    } catch(Exception e){e.printStackTrace();}
-
-                    try {
-                        dayAtrMap = Files.readAllLines(Paths.get(dayFilePath)).stream()
-                                .map(line -> line.split(",")) // Split by comma (assuming CSV format)
-                                .collect(Collectors.toMap(
-                                        cols -> cols[0],               // Key: date column
-                                        cols -> isIndex?Double.parseDouble(cols[6]):Double.parseDouble(cols[7])
-                                ));
-                    } catch(Exception e){e.printStackTrace();}
-
-                    IndexState indexState = indexStateMap.get(candlePeriod);
-                    applyStrategy(indexStateMap,indexState,dayAtrMap,dayAtrMapPercentage);
-                });
-    }
-
+                .collect(Collectors.toList());
+        for(String file : instruments)
+            for(KeyValues kv : runForKeyAttribs)
+                overAllMetricInfoMap.get(kv.sno).addStockDayMetricMap(file.replace(".csv",""));
+
+        int instrumentParallelism = Integer.parseInt(properties.getProperty("instrumentParallelism","1"));
+        if(instrumentParallelism <= 1 || instruments.size() <= 1) {
+            for(int i = 0;i < instruments.size();i++){
+                if(i == instruments.size()-1) lastInstrumentRuns();
+                applyOnInstrument(instruments.get(i),new DayMetricsMaps(instruments.get(i).replace(".csv","")));
+            }
+            return;
+        }
 
-    public void applyStrategy(Map<Integer, IndexState> indexStateMap,State indexState,Map<String,Double> dayAtrMap,Map<String ,Double> dayAtrMapPercentage){
-        Ohlc indexOhlc = indexState.ohlc,indexNextOhlc = indexState.nextOhlc;
+        // each instrument fills its own combined day maps and output buffer, at most instrumentParallelism at a time on
+        // the shared Workers pool; they are merged in instrument order so the combined day maps and output files are
+        // the same as a sequential run
+        List<Callable<DayMetricsMaps>> tasks = new ArrayList<>();
+        for(String file : instruments)
+            tasks.add(() -> {
+                DayMetricsMaps maps = new DayMetricsMaps(file.replace(".csv",""));
+                maps.logSharedExits();
+                PrintWriters.Buffer buffer = new PrintWriters.Buffer();
+                PrintWriters.Buffer previous = PrintWriters.bind(buffer);
+                try {
+                    applyOnInstrument(file,maps);
+                } finally {
+                    PrintWriters.bind(previous);
+                }
+                maps.buffer = buffer;
+                return maps;
+            });
+        int[] merged = {0};
+        Workers.inOrder(tasks,instrumentParallelism,maps -> {
+            maps.buffer.writeToCurrent();
+            if(++merged[0] == instruments.size()) lastInstrumentRuns();
+            maps.replay();
+        });
+    }
 
-        List<StrategyImpl> strategyImpls = new ArrayList<>();
-//        int maxVolPeriod = -Integer.MAX_VALUE;
-        for(KeyValues kv : runForKeyAttribs){
-            String key = indexState.name.contains(" ")?indexState.name.split(" ")[0]:indexState.name;
-            Map<String, DayMetric> map = overAllMetricInfoMap.get(kv.sno).stockDayMetricsMap.get(key);
-            strategyImpls.add(new StrategyImpl(candlePeriodBelongsToDay,indexStateMap,kv,dayAtrMap,dayAtrMapPercentage,indexState,overAllMetricInfoMap.get(kv.sno).dayMetricsMap,map));
-//            maxVolPeriod = Math.max(maxVolPeriod, kv.volumeLookBack);
-        }
-//        indexState.ohlc.storeVolumesForPeriod(maxVolPeriod+1);
+    // every instrument walks the whole history in turn, so any combined day can get exits until the last one runs.
+    // Its exits come in date order: each completes the days before it
+    void lastInstrumentRuns(){
+        overAllMetricInfoMap.values().forEach(info -> info.dayFold.exitsInDateOrder());
+    }
 
-        do {
-            indexState.getNext(true);
-            indexStateMap.forEach((key, is) -> {
-                int period = key;
-                if (period != candlePeriod){
-                    if(period!=375 && indexOhlc.date.equals(is.nextOhlc.date) && is.nextOhlc.mins <= indexOhlc.mins) {
-                        is.getNext(true);
-                    }else if(period == 375){
-                        if(indexOhlc.dnt.equals(is.nextOhlc.dnt)){
-                            is.getNext(true);
+    private void applyOnInstrument(String file,DayMetricsMaps maps){
+        String stocksDayFilesPath = properties.getProperty("stocksDayFilesPath");
+        boolean eventDrivenExits = Boolean.parseBoolean(properties.getProperty("eventDrivenExits","false"));
+        boolean intrabarExits = Boolean.parseBoolean(properties.getProperty("intrabarExits","false"));
+        boolean entrySignalCache = Boolean.parseBoolean(properties.getProperty("entrySignalCache","true"));
+        boolean isIndex = file.startsWith("Bank");
+        String dayFilePath = isIndex?indexDayFile:stocksDayFilesPath+file;
+        Map<Integer, IndexState> indexStateMap = new HashMap<>();
+
+        if(isIndex) {
+            String bnBaseFolderPath = properties.getProperty("" +
+                    "indexFilePath");
+            List<String> periodicFiles = getAllFilesOfFolder(bnBaseFolderPath);
+            periodicFiles.stream().filter(pf -> pf.startsWith("BankNifty") && pf.contains("min"))
+                    .forEach(pf -> {
+                        int duration = Integer.parseInt(pf.split(" ")[1].replace("min", ""));
+                        if(globakCandlePeriodsInKeystore.contains(duration)) {
+                            indexStateMap.put(
+                                    duration,
+                                    new IndexState(pf.replace(".csv", ""), bnBaseFolderPath + pf, 0, dateTimeFormat, true)
+                            );
                         }
-                        else if(!indexOhlc.date.equals(is.nextOhlc.date)){// for handling extra dates present in dayData but not in minuteData
-                            // Parse the strings into LocalDate objects
-                            LocalDate indexDate = LocalDate.parse(indexOhlc.date, formatter),
-                                    dayDate = LocalDate.parse(is.nextOhlc.date, formatter);
-                            if(indexDate.isAfter(dayDate)){
-                                while(indexDate.isAfter(dayDate)){
-                                    is.getNext(true);
-                                    indexDate = LocalDate.parse(indexOhlc.date, formatter);
-                                    dayDate = LocalDate.parse(is.nextOhlc.date, formatter);
-                                }
-                            }
-                        }
-                    }
+                    });
+        }else{
+
+            Arrays.stream(stocksFolders).forEach(bf -> {
+                int duration = Integer.parseInt(bf.split(" ")[1].replace("min", ""));
+                if(globakCandlePeriodsInKeystore.contains(duration)) {
+                    indexStateMap.put(
+                            duration,
+                            new IndexState(file.replace(".csv", ""), bf + file, 0, dateTimeFormat, true)
+                    );
                 }
             });
+        }
 
+        indexStateMap.entrySet().stream().filter(entry->entry.getKey()==375)
+                .forEach(entry->{
+                    entry.getValue().readTillDate(false,true,"09-01-15 15:29");
+                });
 
-            int mins = indexOhlc.mins;
+        List<String> minuteLines = null;
+        for(KeyValues kv : runForKeyAttribs) {
+            IndexState indexState1 = indexStateMap.get(kv.candlePeriod); //15 35000 data
+
+            indexState1.loadIndicators(kv.emaPeriod,kv.rsiPeriod);
+            if(kv.usePivots) indexState1.loadPivotLevels();
+            if(entrySignalCache && kv.usePivots && kv.positional && kv.rsiPeriod!=0) indexState1.loadEntrySignal(kv);
+            if(eventDrivenExits) indexState1.loadFirstTouchIndex();
+            if(skipIdleBars) indexState1.loadSessionBars();
+            // a 1-min bar is its own single minute
+            if(intrabarExits && kv.candlePeriod==1) indexState1.loadIntrabarIndex(indexState1.lines);
+            else if(intrabarExits){
+                if(minuteLines==null) minuteLines = loadMinuteLines(isIndex,file,indexStateMap);
+                indexState1.loadIntrabarIndex(minuteLines);
+            }
+        }
+        Map<String, Double> dayAtrMap = new HashMap<>();
+        Map<String , Double > dayAtrMapPercentage=new HashMap<>();
 
-            if(indexOhlc.close!=0) {
-                strategyImpls.forEach(strategyImpl -> {
-                    if(!strategyImpl.dayExited)
-                        //System.out.println("Iterate entered");
-                        strategyImpl.iterate(mins);
-                });
-            //System.out.println(indexOhlc.dnt+" ");
+        try {
+            dayAtrMapPercentage = Files.readAllLines(Paths.get(dayFilePath)).stream()
+//                    .skip(14)
+                    .map(line -> line.split(",")) // Split by comma (assuming CSV format)
+                    .collect(Collectors.toMap(
+                            cols -> cols[0],               // Key: date column
+                            cols -> Double.parseDouble(cols[6])
+                    ));
+        } catch(Exception e){e.printStackTrace();}
+
+        try {
+            dayAtrMap = Files.readAllLines(Paths.get(dayFilePath)).stream()
+                    .map(line -> line.split(",")) // Split by comma (assuming CSV format)
+                    .collect(Collectors.toMap(
+                            cols -> cols[0],               // Key: date column
+                            cols -> isIndex?Double.parseDouble(cols[6]):Double.parseDouble(cols[7])
+                    ));
+        } catch(Exception e){e.printStackTrace();}
+
+        applyStrategy(indexStateMap,dayAtrMap,dayAtrMapPercentage,maps);
+    }
+
+
+    public void applyStrategy(Map<Integer, IndexState> indexStateMap,Map<String,Double> dayAtrMap,Map<String ,Double> dayAtrMapPercentage,
+                              DayMetricsMaps maps){
+        // one walk over the finest period; coarser periods are stepped when the walk reaches their bars
+        TreeMap<Integer, List<StrategyImpl>> strategyImplsByPeriod = new TreeMap<>();
+        for(KeyValues kv : runForKeyAttribs){
+            State periodState = indexStateMap.get(kv.candlePeriod);
+            strategyImplsByPeriod.computeIfAbsent(kv.candlePeriod, k -> new ArrayList<>())
+                    .add(newStrategyImpl(kv,indexStateMap,periodState,dayAtrMap,dayAtrMapPercentage,maps));
+        }
+        if(reuseCostVariants) strategyImplsByPeriod.values().forEach(StrategyImpl::linkCostVariants);
+        Map<Integer,KeystoreBank> banks = new HashMap<>();
+        strategyImplsByPeriod.forEach((period,strategyImpls) -> banks.put(period,new KeystoreBank(
+                strategyImpls.stream().map(strategyImpl -> strategyImpl.kv).collect(Collectors.toList()),indexStateMap.get(period))));
+        int driverPeriod = strategyImplsByPeriod.firstKey();
+        State driver = indexStateMap.get(driverPeriod);
+        Ohlc driverOhlc = driver.ohlc;
+        List<StrategyImpl> driverImpls = strategyImplsByPeriod.get(driverPeriod);
+        KeystoreBank driverBank = banks.get(driverPeriod);
+        if(skipIdleBars) driverBank.markActiveBars(driver,driver.parser+1,runTill);
+
+        do {
+            if(skipIdleBars && driverImpls.stream().allMatch(StrategyImpl::isIdle))
+                driver.advanceTo(driverBank.nextActiveBar(driver.parser+1));
+            step(driver,driverImpls,driverBank);
+            for(Map.Entry<Integer, List<StrategyImpl>> entry : strategyImplsByPeriod.tailMap(driverPeriod,false).entrySet()) {
+                State is = indexStateMap.get(entry.getKey());
+                while(!is.finished && (driver.finished || isAtOrBefore(is.nextOhlc,driverOhlc)))
+                    step(is,entry.getValue(),banks.get(entry.getKey()));
             }
+//            System.out.println(indexOhlc.date+" "+runTill);
+        }while(!driver.finished && !runTill.equals(driverOhlc.dnt));
+        strategyImplsByPeriod.values().forEach(strategyImpls -> strategyImpls.forEach(StrategyImpl::flushPaths));
+    }
 
-            if(!positional && (!indexOhlc.date.equals(indexNextOhlc.date) || indexState.finished)) {
-                strategyImpls.clear();
-                for(KeyValues kv : runForKeyAttribs){
-                    String key = indexState.name.contains(" ")?indexState.name.split(" ")[0]:indexState.name;
-                    Map<String, DayMetric> map = overAllMetricInfoMap.get(kv.sno).stockDayMetricsMap.get(key);
-                    strategyImpls.add(new StrategyImpl(candlePeriodBelongsToDay,indexStateMap,kv,dayAtrMap,dayAtrMapPercentage,indexState,overAllMetricInfoMap.get(kv.sno).dayMetricsMap,map));
+    // moves one period's state to its next bar and runs the keystores on that period
+    private void step(State indexState,List<StrategyImpl> strategyImpls,KeystoreBank bank){
+        Ohlc indexOhlc = indexState.ohlc;
+        indexState.getNext(true);
+        int mins = indexOhlc.mins;
+
+        if(indexOhlc.close!=0) {
+            long[] entryCandidates = bank.entryCandidates(indexState.parser,mins);
+            for(int i = 0;i < strategyImpls.size();i++){
+                StrategyImpl strategyImpl = strategyImpls.get(i);
+                if(!strategyImpl.dayExited)
+                    //System.out.println("Iterate entered");
+                    strategyImpl.iterate(mins,KeystoreBank.isSet(entryCandidates,i));
+            }
+            //System.out.println(indexOhlc.dnt+" ");
+        }
+
+        if(!indexOhlc.date.equals(indexState.nextOhlc.date) || indexState.finished) {
+            for(StrategyImpl strategyImpl : strategyImpls){
+                if(!strategyImpl.kv.positional){
+                    strategyImpl.flushPaths();
+                    strategyImpl.resetForNewDay();
                 }
             }
+        }
+    }
 
-//            System.out.println(indexOhlc.date+" "+runTill);
-        }while(!indexState.finished && !runTill.equals(indexOhlc.dnt));
+    private StrategyImpl newStrategyImpl(KeyValues kv,Map<Integer, IndexState> indexStateMap,State indexState,
+                                         Map<String,Double> dayAtrMap,Map<String ,Double> dayAtrMapPercentage,DayMetricsMaps maps){
+        return new StrategyImpl(kv.candlePeriod==375,indexStateMap,kv,dayAtrMap,dayAtrMapPercentage,indexState,
+                maps.dayMetricsMaps.get(kv.sno),maps.stockDayMetricsMaps.get(kv.sno));
+    }
+
+    // 1-min bars of the instrument: those of the 1-min state when a keystore runs on it, else read for the purpose
+    private List<String> loadMinuteLines(boolean isIndex,String file,Map<Integer, IndexState> indexStateMap){
+        IndexState minuteState = indexStateMap.get(1);
+        if(minuteState!=null) return minuteState.lines;
+        String path;
+        if(isIndex){
+            String bnBaseFolderPath = properties.getProperty("indexFilePath");
+            path = bnBaseFolderPath + getAllFilesOfFolder(bnBaseFolderPath).stream()
+                    .filter(pf -> pf.startsWith("BankNifty") && pf.contains(" 1min"))
+                    .findFirst().orElseThrow(() -> new IllegalStateException("no 1min file in "+bnBaseFolderPath));
+        }else path = stocksFolders[0] + file;
+        return new IndexState(file.replace(".csv",""),path,0,dateTimeFormat,true).lines;
+    }
+
+    // bars without a time (day bars) sort after every intraday bar of their date
+    private static boolean isAtOrBefore(Ohlc bar,Ohlc driverBar){
+        int barDate = getDateKey(bar.date),driverDate = getDateKey(driverBar.date);
+        if(barDate!=driverDate) return barDate < driverDate;
+        if(bar.time==null) return driverBar.time==null;
+        return driverBar.time==null || bar.mins <= driverBar.mins;
     }
 
 
@@ -264,39 +394,16 @@ public class Strategy {
         return null;
     }
 
-    private void processDayMetricMap(boolean printDayWise,Map<String,DayMetric> dayMetricsMap,OverAllMetric overAllMetric,String keystoreLn,float costPercent){
-        //            Map<String,DayMetric> dayMetricsMap = metricInfo.dayMetricsMap;
-        float drawDownPercent=0,cumulativeNetProfitPercent=0,maxCumulativeProfitPercent=-Float.MAX_VALUE,
-                maxDrawDownPercentage=-Float.MAX_VALUE;
-        float netProfitPercent = 0;
-        //for(DayMetric dayMetric:dayMetricsMap.values()) {
-        for(Map.Entry<String,DayMetric> entry:dayMetricsMap.entrySet()) {
-            String date = entry.getKey();
-            DayMetric dayMetric = entry.getValue();
-            if(printDayWise)dayMetric.print();
-            cumulativeNetProfitPercent += dayMetric.profitPercentWithCost.profit;
-            maxCumulativeProfitPercent = Float.max(maxCumulativeProfitPercent,cumulativeNetProfitPercent);
-            drawDownPercent = maxCumulativeProfitPercent - cumulativeNetProfitPercent;
-            maxDrawDownPercentage = Float.max(maxDrawDownPercentage,drawDownPercent);
-            netProfitPercent += dayMetric.profitPercentWithCost.profit;
-        }
-        overAllMetric.calmar = netProfitPercent/maxDrawDownPercentage;
-        overAllMetric.update(new ArrayList<>(dayMetricsMap.values()));
-        overAllMetric.calculateOverAllMetricsAndPrint(keystoreLn,costPercent);
-    }
-
     public void calculateOverAll(){
         overAllMetricInfoMap.values().forEach(metricInfo->{
-            metricInfo.stockDayMetricsMap.entrySet().forEach(entry->{
-                String symbol = entry.getKey();
-
-                Map<String,DayMetric> dayMetricsMap = entry.getValue();
-                processDayMetricMap(false,dayMetricsMap,metricInfo.stockOverAllMetric.get(symbol),metricInfo.keystoreLn,metricInfo.costPercent);
-            });
+            metricInfo.stockDaySlots.values().forEach(slot->
+                    stockDays.finish(slot,metricInfo.keystoreLn,metricInfo.costPercent));
         });
 
-        overAllMetricInfoMap.values().forEach(metricInfo->{
-            processDayMetricMap(true,metricInfo.dayMetricsMap,metricInfo.overAllMetric,metricInfo.keystoreLn,metricInfo.costPercent);
+        // the combined days still open
+        overAllMetricInfoMap.forEach((sno,metricInfo)->{
+            metricInfo.dayFold.finish(metricInfo.keystoreLn,metricInfo.costPercent);
+            KeystoreClusters.calmar(sno,metricInfo.overAllMetric.calmar);
         });
     }
 
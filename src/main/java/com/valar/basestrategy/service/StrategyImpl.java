@@ -1,32 +1,35 @@
 package com.valar.basestrategy.service;
 
+import com.valar.basestrategy.entities.ExcursionPath;
 import com.valar.basestrategy.entities.Ohlc;
+import com.valar.basestrategy.entities.OpenTradeBook;
 import com.valar.basestrategy.entities.TradeEntity;
-import com.valar.basestrategy.entities.indicators.RegimeDetector;
+import com.valar.basestrategy.entities.TradeLedger;
+import com.valar.basestrategy.entities.indicators.EntrySignal;
+import com.valar.basestrategy.entities.indicators.IntrabarIndex;
 import com.valar.basestrategy.state.minute.IndexState;
 import com.valar.basestrategy.state.minute.State;
-import com.valar.basestrategy.tradeAndDayMetrics.DayMetric;
-import com.valar.basestrategy.utils.DayIterator;
+import com.valar.basestrategy.tradeAndDayMetrics.DayMetricSink;
+import com.valar.basestrategy.tradeAndDayMetrics.StopTargetSweep;
 import com.valar.basestrategy.utils.KeyValues;
-import com.valar.basestrategy.utils.RegimeWriter;
+import com.valar.basestrategy.utils.TimerWheel;
 import org.ta4j.core.Bar;
 
 import java.time.DayOfWeek;
-import java.time.LocalDateTime;
+import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
 
-import static com.valar.basestrategy.application.PropertiesReader.properties;
-
 public class StrategyImpl {
     private int tradeId;
     private float dayMaxProfit, dayMaxProfitPercent;
     public KeyValues kv;
     public boolean dayExited;
     private int unSquaredTrades;
-    private final List<TradeEntity> tradeEntities = new ArrayList<>();
+    private final OpenTradeBook openTrades = new OpenTradeBook();
+    private final TradeLedger ledger = new TradeLedger();
     private final State indexState;
-    private final List<Map<String, DayMetric>> dayMetricsMapList;
+    private final List<DayMetricSink> dayMetricsMapList;
     private double dayAtrPercent, dayAtrPercentage;
     private boolean dayATRConditionSatisfied, candlePeriodBelongsToDay;
     private final Map<Integer, IndexState> indexStateMap;
@@ -34,14 +37,46 @@ public class StrategyImpl {
     private int parserAtLastTrade;
     private String lastAtrCheckeAtDate = "";
     private String prevDate = null;
+    // time exits, registered at entry and keyed by epoch minute
+    private static final int THURSDAY_EXIT = 0, END_TIME_EXIT = 1, MAX_HOLDING_EXIT = 2;
+    private static final int THURSDAY_EXIT_MINS = 15 * 60 + 15;
+    private final TimerWheel<TradeEntity> timeExits = new TimerWheel<>();
+    private final List<TimerWheel.Entry<TradeEntity>> dueTimeExits = new ArrayList<>();
+    private final Map<TradeEntity, Integer> timeExitReasons = new IdentityHashMap<>();
+    private final List<TradeEntity> exitCandidates = new ArrayList<>();
+    private String barDate;
+    private long barDay;
+    private DayOfWeek barDayOfWeek;
+    // bars where the entry predicate holds, shared with keystores of the same signal (null: evaluated per bar)
+    private final BitSet entrySignal;
+    // stop/target sweep: excursion paths of the entries whose time exit has not come yet, squared or not
+    private final Map<TradeEntity, ExcursionPath> openPaths = new LinkedHashMap<>();
+    // keystores differing only in costPercent/hpCostPercent: the first one simulates and records what each bar
+    // entered and exited, the others take the same trades under their own costs
+    private StrategyImpl costLeader;
+    private final List<StrategyImpl> costFollowers = new ArrayList<>();
+    private final List<TradeEvent> barEvents = new ArrayList<>();
+    private int barEventsParser = -1;
+    private final Map<TradeEntity, TradeEntity> costTwins = new IdentityHashMap<>();
+
+    // an entry (reason null) or exit, with its price and the day max profit the exit was booked with
+    private static class TradeEvent {
+        final TradeEntity trade;
+        final String reason, reasonInfo;
+        final float exitPrice, dayMaxProfit, dayMaxProfitPercent;
+
+        TradeEvent(TradeEntity trade, String reason, String reasonInfo, float exitPrice, float dayMaxProfit, float dayMaxProfitPercent) {
+            this.trade = trade;
+            this.reason = reason;
+            this.reasonInfo = reasonInfo;
+            this.exitPrice = exitPrice;
+            this.dayMaxProfit = dayMaxProfit;
+            this.dayMaxProfitPercent = dayMaxProfitPercent;
+        }
+    }
 
-    private static final DateTimeFormatter DTF = DateTimeFormatter.ofPattern("dd-MM-yy HH:mm");
     private static final DateTimeFormatter DAY_FMT_MIN = DateTimeFormatter.ofPattern("dd-MM-yy");
 
-    // regime
-    private final RegimeService regimeSvc;
-    private final RegimeWriter regimeWriter;
-
     public StrategyImpl(
             boolean candlePeriodBelongsToDay,
             Map<Integer, IndexState> indexStateMap,
@@ -49,8 +84,8 @@ public class StrategyImpl {
             Map<String, Double> dayAtrMap,
             Map<String, Double> dayAtrMapPercentage,
             State indexState,
-            Map<String, DayMetric> dayMetricsMap,
-            Map<String, DayMetric> stockDayMetricsMap
+            DayMetricSink dayMetricsMap,
+            DayMetricSink stockDayMetricsMap
     ) {
         this.indexStateMap = indexStateMap;
         this.kv = kv;
@@ -59,46 +94,80 @@ public class StrategyImpl {
         this.dayAtrMapPercentage = dayAtrMapPercentage;
         this.dayMetricsMapList = new ArrayList<>(Arrays.asList(dayMetricsMap, stockDayMetricsMap));
         this.candlePeriodBelongsToDay = candlePeriodBelongsToDay;
+        this.entrySignal = indexState.entrySignals.get(EntrySignal.key(kv));
+    }
 
-        try {
-            String outPath = properties.getProperty("regimeOutputPath");
-            String bnPath  = properties.getProperty("regimeDayPath");
-            String nfPath  = properties.getProperty("regimeBenchmarkDayPath");
-            if (bnPath == null || nfPath == null) throw new IllegalArgumentException("Missing regimeDayPath or regimeBenchmarkDayPath");
-
-            DayIterator bnIter = new DayIterator(bnPath);
-            DayIterator nfIter = new DayIterator(nfPath);
-
-            int windowN       = Integer.parseInt(properties.getProperty("regimeWindowN"));
-            double volThr  = Double.parseDouble(properties.getProperty("regimeVolThreshold"));
-            double corrThr = Double.parseDouble(properties.getProperty("regimeCorrThreshold"));
+    // intraday keystores start every day afresh: the per-day state goes back to what the constructor left.
+    // Open paths must have been flushed; cost links (linkCostVariants) are kept
+    public void resetForNewDay() {
+        tradeId = 0;
+        dayMaxProfit = 0;
+        dayMaxProfitPercent = 0;
+        dayExited = false;
+        unSquaredTrades = 0;
+        openTrades.clear();
+        ledger.clear();
+        dayAtrPercent = 0;
+        dayAtrPercentage = 0;
+        dayATRConditionSatisfied = false;
+        parserAtLastTrade = 0;
+        lastAtrCheckeAtDate = "";
+        prevDate = null;
+        timeExits.clear();
+        dueTimeExits.clear();
+        timeExitReasons.clear();
+        exitCandidates.clear();
+        openPaths.clear();
+        barEvents.clear();
+        barEventsParser = -1;
+        costTwins.clear();
+    }
 
-            RegimeDetector detector = new RegimeDetector(windowN, volThr, corrThr);
+    // nothing open, priced or tracked: a bar where the keystore cannot enter leaves it as it was, apart from
+    // the day's first bar and ATR check (see KeystoreBank.markActiveBars)
+    public boolean isIdle() {
+        return openTrades.size() == 0 && openPaths.isEmpty() && costTwins.isEmpty();
+    }
 
-            this.regimeSvc    = new RegimeService(bnIter, nfIter, detector);
-            this.regimeWriter = new RegimeWriter(outPath);
+    public void setUnSquaredTrades(int unSquaredTrades) { this.unSquaredTrades = unSquaredTrades; }
 
-            // Produce regimes for the full history up-front
-            regimeSvc.writeAllHistory(regimeWriter);
-        } catch (Exception e) {
-            throw new RuntimeException("Regime init failed", e);
+    // links impls of one candle period run on the same bars: each one whose signal columns match an earlier
+    // one's takes its trades from it instead of simulating
+    public static void linkCostVariants(List<StrategyImpl> strategyImpls) {
+        Map<String, StrategyImpl> leaders = new HashMap<>();
+        for (StrategyImpl strategyImpl : strategyImpls) {
+            strategyImpl.costLeader = null;
+            strategyImpl.costFollowers.clear();
+        }
+        for (StrategyImpl strategyImpl : strategyImpls) {
+            StrategyImpl leader = leaders.putIfAbsent(strategyImpl.kv.signalKey(), strategyImpl);
+            if (leader == null) continue;
+            strategyImpl.costLeader = leader;
+            leader.costFollowers.add(strategyImpl);
         }
     }
 
-    public void setUnSquaredTrades(int unSquaredTrades) { this.unSquaredTrades = unSquaredTrades; }
-
     public void iterate(int mins) {
+        iterate(mins, true);
+    }
+
+    // entryCandidate false: the keystore's entry signal does not fire in its window on this bar (KeystoreBank)
+    public void iterate(int mins, boolean entryCandidate) {
+        if (costLeader != null) {
+            followCostLeader();
+            return;
+        }
+        if (!costFollowers.isEmpty()) {
+            barEvents.clear();
+            barEventsParser = indexState.parser;
+        }
         String currDate = indexState.ohlc.date;
 
-        // NOTE: we already wrote all regimes in the constructor. No per-day regime write here.
+        // NOTE: regimes for the whole history are written once at startup (RegimeService.writeRegimeHistory).
 
         // pivots on day change
         if (prevDate != null && !prevDate.equals(currDate)) {
-            float high = indexState.ohlc.prevDayHigh;
-            float low = indexState.ohlc.prevDayLow;
-            float close = indexState.ohlc.lastDayClose;
-            ((IndexState)indexState).computePivots(high, low, close);
-            indexState.pivotsInitialized = true;
+            indexState.selectPivotDay(currDate);
         }
         prevDate = currDate;
 
@@ -118,6 +187,7 @@ public class StrategyImpl {
 
         if (mins >= kv.startTime || candlePeriodBelongsToDay) {
             checkForExitsInEnteredTrades();
+            if (!entryCandidate) return;
 
             boolean entryOk = indexState.ohlc.mins >= kv.startTime
                     && indexState.ohlc.mins <= kv.cutOffTime
@@ -133,6 +203,8 @@ public class StrategyImpl {
     }
 
     private void runOptionalLogic(boolean entryConditionSatisfied) {
+        // the finished state's extra pass over its last bar is past the signal's bars
+        if (entrySignal != null && indexState.parser < indexState.lines.size() && !entrySignal.get(indexState.parser)) return;
         Ohlc bar = indexState.ohlc;
         int curIdx = indexState.parser;
         indexState.loadIndicators(kv.emaPeriod, kv.rsiPeriod);
@@ -149,70 +221,226 @@ public class StrategyImpl {
 
         if (kv.usePivots) {
             if (bar.high>bar.prevDayHigh && rsiVal > kv.rsiLong && bar.close > emaVal  && kv.tradeType.equals("l")) {
-                TradeEntity t = new TradeEntity(tradeId, 0, 0, kv, (IndexState) indexState, indexStateMap);
-                t.setTrade(emaVal,rsiVal,(indexState.pivotsInitialized ? ((float) ((IndexState)indexState).pp) : Float.NaN),
+                TradeEntity t = new TradeEntity(ledger, tradeId, 0, 0, kv, (IndexState) indexState);
+                t.setTrade(emaVal,rsiVal,(indexState.pivotsInitialized ? indexState.pp : Float.NaN),
                         bar.prevDayHigh,bar.prevDayLow, bar.high,bar.low,high10,low10);
-                t.setStopLoss(((IndexState)indexState).nearestBelow(bar.close,low10));
-                t.setTarget(((IndexState)indexState).nearestAbove(bar.close, high10));
+                t.setStopLoss(kv.allPivotLevels ? indexState.nearestLevelBelow(bar.close, low10) : indexState.nearestBelow(bar.close, low10));
+                t.setTarget(kv.allPivotLevels ? indexState.nearestLevelAbove(bar.close, high10) : indexState.nearestAbove(bar.close, high10));
                 if (kv.isUseRegime() && hasSetRegimeSetter(t))
                     t.setRegime(((IndexState)indexState).getTodayRegime()==null ? "Null" : ((IndexState)indexState).getTodayRegime().name());
-                tradeEntities.add(t);
+                openTrade(t);
                 tradeId++;
                 parserAtLastTrade = indexState.parser;
             }
             if (bar.low<bar.prevDayLow && rsiVal < kv.rsiShort && bar.close < emaVal &&  kv.tradeType.equals("s")) {
-                TradeEntity t = new TradeEntity(tradeId, 0, 0, kv, (IndexState) indexState, indexStateMap);
-                t.setTrade(emaVal,rsiVal,(indexState.pivotsInitialized ? ((float) ((IndexState)indexState).pp) : Float.NaN),
+                TradeEntity t = new TradeEntity(ledger, tradeId, 0, 0, kv, (IndexState) indexState);
+                t.setTrade(emaVal,rsiVal,(indexState.pivotsInitialized ? indexState.pp : Float.NaN),
                         bar.prevDayHigh,bar.prevDayLow, bar.high,bar.low,high10,low10);
-                t.setStopLoss(((IndexState)indexState).nearestAbove(bar.close, high10));
-                t.setTarget(((IndexState)indexState).nearestBelow(bar.close,low10));
+                t.setStopLoss(kv.allPivotLevels ? indexState.nearestLevelAbove(bar.close, high10) : indexState.nearestAbove(bar.close, high10));
+                t.setTarget(kv.allPivotLevels ? indexState.nearestLevelBelow(bar.close, low10) : indexState.nearestBelow(bar.close, low10));
                 if (kv.isUseRegime() && hasSetRegimeSetter(t))
                     t.setRegime(((IndexState)indexState).getTodayRegime()==null ? "Null" : ((IndexState)indexState).getTodayRegime().name());
-                tradeEntities.add(t);
+                openTrade(t);
                 tradeId++;
                 parserAtLastTrade = indexState.parser;
             }
         }
     }
 
+    // replays the leader's entries and exits of this bar on twins carrying this keystore's costs
+    private void followCostLeader() {
+        dayExited = costLeader.dayExited;
+        if (costLeader.barEventsParser != indexState.parser) return;
+        for (TradeEvent event : costLeader.barEvents) {
+            if (event.reason == null) {
+                costTwins.put(event.trade, event.trade.copyFor(kv, ledger));
+                continue;
+            }
+            TradeEntity twin = costTwins.remove(event.trade);
+            dayMaxProfit = event.dayMaxProfit;
+            dayMaxProfitPercent = event.dayMaxProfitPercent;
+            twin.exit(event.reason, event.reasonInfo, event.exitPrice);
+            onTradeExit(indexState.ohlc.date, twin);
+            ledger.release(twin);
+        }
+    }
+
+    private void openTrade(TradeEntity t) {
+        if (indexState.firstTouchIndex != null) openTrades.add(t, firstTouchAfterBar(t));
+        else openTrades.add(t);
+        scheduleTimeExits(t);
+        if (StopTargetSweep.enabled()) openPaths.put(t, new ExcursionPath(t));
+        if (!costFollowers.isEmpty()) barEvents.add(new TradeEvent(t, null, null, 0, 0, 0));
+    }
+
+    private void exitTrade(TradeEntity tradeEntity, String reason, String reasonInfo, String date) {
+        exitTrade(tradeEntity, reason, reasonInfo, date, indexState.ohlc.close);
+    }
+
+    private void exitTrade(TradeEntity tradeEntity, String reason, String reasonInfo, String date, float exitPrice) {
+        tradeEntity.exit(reason, reasonInfo, exitPrice);
+        openTrades.squared(tradeEntity);
+        onTradeExit(date, tradeEntity);
+        if (!costFollowers.isEmpty())
+            barEvents.add(new TradeEvent(tradeEntity, reason, reasonInfo, exitPrice, dayMaxProfit, dayMaxProfitPercent));
+        if (!openPaths.containsKey(tradeEntity)) ledger.release(tradeEntity);
+    }
+
+    // event driven exits: first bar after the current one where the trade's stop or target is touched
+    private int firstTouchAfterBar(TradeEntity t) {
+        return indexState.firstTouchIndex.firstTouch(indexState.parser + 1, t.lOrS(), t.stopLoss(), t.target());
+    }
+
+    // only trades whose stop or target lies inside the bar's range (or, event driven, whose first touch is due),
+    // or whose time exit is due, are looked at
     public void checkForExitsInEnteredTrades() {
         Ohlc bar = indexState.ohlc;
-        LocalDateTime barDateTime = LocalDateTime.parse(bar.date + " " + bar.time, DTF);
+        if (!bar.date.equals(barDate)) {
+            barDate = bar.date;
+            LocalDate day = LocalDate.parse(bar.date, DAY_FMT_MIN);
+            barDay = day.toEpochDay();
+            barDayOfWeek = day.getDayOfWeek();
+        }
 
-        float totalProfitPercent = 0, totalProfit = 0;
-        unSquaredTrades = 0;
+        if (!openPaths.isEmpty()) extendPaths(bar);
 
-        for (TradeEntity tradeEntity : tradeEntities) {
-            if (tradeEntity.tradeSquared) continue;
+        exitCandidates.clear();
+        boolean eventDriven = indexState.firstTouchIndex != null;
+        exitCandidates.addAll(eventDriven ? openTrades.touchedBy(indexState.parser) : openTrades.touched(bar.low, bar.high));
+        collectDueTimeExits(bar);
+        if (!timeExitReasons.isEmpty()) {
+            exitCandidates.addAll(timeExitReasons.keySet());
+            exitCandidates.sort(Comparator.comparingInt(t -> t.tradeId));
+        }
 
-            char lOrS = tradeEntity.tradeAttribs.get(0).lOrS;
-            boolean forceExit = (barDateTime.getDayOfWeek() == DayOfWeek.THURSDAY && bar.mins >= (15 * 60 + 15));
+        TradeEntity last = null;
+        for (TradeEntity tradeEntity : exitCandidates) {
+            if (tradeEntity == last) continue;
+            last = tradeEntity;
+            Integer timeExit = timeExitReasons.get(tradeEntity);
+            if (timeExit != null && !openPaths.isEmpty()) closePath(tradeEntity, timeExit, bar);
+            if (tradeEntity.tradeSquared) continue;
+            char lOrS = tradeEntity.lOrS();
+            double stopLoss = tradeEntity.stopLoss(), target = tradeEntity.target();
             boolean hitSL = false, hitTarget = false;
 
-            if (lOrS == 'l') { hitSL = (bar.low <= tradeEntity.stopLoss); hitTarget = (bar.high >= tradeEntity.target); }
-            else if (lOrS == 's') { hitSL = (bar.high >= tradeEntity.stopLoss); hitTarget = (bar.low <= tradeEntity.target); }
+            if (lOrS == 'l') { hitSL = (bar.low <= stopLoss); hitTarget = (bar.high >= target); }
+            else if (lOrS == 's') { hitSL = (bar.high >= stopLoss); hitTarget = (bar.low <= target); }
+            IntrabarIndex intrabar = indexState.intrabarIndex;
+            // both inside the bar: its 1-min bars tell which came first
+            if (hitSL && hitTarget && intrabar != null && !intrabar.stopFirst(indexState.parser, lOrS, stopLoss, target))
+                hitSL = false;
+
+            if (hitSL) exitTrade(tradeEntity, "StopLoss", "SL-hit", bar.date, fillPrice(intrabar, lOrS == 'l', stopLoss));
+            else if (hitTarget) exitTrade(tradeEntity, "Target", "TP-hit", bar.date, fillPrice(intrabar, lOrS == 's', target));
+            else if (timeExit == null) {
+                // touched on a bar no exit check ran on (no day ATR yet): wait for the next touch
+                if (eventDriven) openTrades.reschedule(tradeEntity, firstTouchAfterBar(tradeEntity));
+            }
+            else {
+                String[] reason = timeExitReason(timeExit, bar);
+                exitTrade(tradeEntity, reason[0], reason[1], bar.date);
+            }
+        }
+        timeExitReasons.clear();
+        openTrades.removeSquared();
+        unSquaredTrades = openTrades.size();
+        dayMaxProfit = Math.max(dayMaxProfit, openTrades.barProfit);
+        dayMaxProfitPercent = Math.max(dayMaxProfitPercent, openTrades.barProfitPercent);
+    }
 
-            if (hitSL) { tradeEntity.exit("StopLoss", "SL-hit"); onTradeExit(bar.date, tradeEntity); }
-            else if (hitTarget) { tradeEntity.exit("Target", "TP-hit"); onTradeExit(bar.date, tradeEntity); }
-            else if (forceExit) { tradeEntity.exit("ForceExit", "TimeExit"); onTradeExit(bar.date, tradeEntity); }
+    // with intrabarExits a stop or target fills where the bar's 1-min bars reached it, else at the bar's close
+    private float fillPrice(IntrabarIndex intrabar, boolean below, double level) {
+        float price = intrabar == null ? Float.NaN : intrabar.fillPrice(indexState.parser, below, level);
+        return Float.isNaN(price) ? indexState.ohlc.close : price;
+    }
 
-            if (!tradeEntity.tradeSquared) unSquaredTrades++;
-            totalProfitPercent += tradeEntity.getTotalProfitPercent();
-            totalProfit += tradeEntity.getTotalProfit();
+    // Thursday 15:15 of the entry week, the entry day's endTime for intraday keystores, entry + maxHoldingMinutes.
+    // Only positional keystores enter trades (runOptionalLogic), so as yet the endTime deadline is never scheduled
+    private void scheduleTimeExits(TradeEntity trade) {
+        Ohlc bar = indexState.ohlc;
+        timeExits.schedule(nextThursdayExit(), trade, THURSDAY_EXIT);
+        if (!kv.positional) timeExits.schedule(barDay * 1440 + kv.endTime, trade, END_TIME_EXIT);
+        if (kv.maxHoldingMinutes > 0) timeExits.schedule(barDay * 1440 + bar.mins + kv.maxHoldingMinutes, trade, MAX_HOLDING_EXIT);
+    }
+
+    // Thursday 15:15 on or after the current bar's date
+    private long nextThursdayExit() {
+        int daysToThursday = (DayOfWeek.THURSDAY.getValue() - barDayOfWeek.getValue() + 7) % 7;
+        return (barDay + daysToThursday) * 1440 + THURSDAY_EXIT_MINS;
+    }
+
+    // a deadline only says the exit may be due: a bar that does not satisfy the rule itself (a Friday after a
+    // Thursday without bars past 15:15, a day that ended before endTime) puts the exit back on the wheel
+    private void collectDueTimeExits(Ohlc bar) {
+        if (timeExits.size() == 0) return;
+        dueTimeExits.clear();
+        timeExits.advance(barDay * 1440 + bar.mins, dueTimeExits);
+        for (TimerWheel.Entry<TradeEntity> due : dueTimeExits) {
+            if (due.item.tradeSquared && !openPaths.containsKey(due.item)) continue;
+            boolean satisfied;
+            if (due.reason == THURSDAY_EXIT) {
+                satisfied = barDayOfWeek == DayOfWeek.THURSDAY && bar.mins >= THURSDAY_EXIT_MINS;
+                if (!satisfied) timeExits.schedule(nextThursdayExit(), due.item, THURSDAY_EXIT);
+            } else if (due.reason == END_TIME_EXIT) {
+                satisfied = bar.mins >= kv.endTime;
+                if (!satisfied) timeExits.schedule(barDay * 1440 + kv.endTime, due.item, END_TIME_EXIT);
+            } else satisfied = true;
+            if (satisfied) timeExitReasons.merge(due.item, due.reason, Math::min);
         }
-        dayMaxProfit = Math.max(dayMaxProfit, totalProfit);
-        dayMaxProfitPercent = Math.max(dayMaxProfitPercent, totalProfitPercent);
     }
 
-    public void onTradeExit(String date, TradeEntity tradeEntity) {
-        for (Map<String, DayMetric> dayMetricsMap : dayMetricsMapList) {
-            DayMetric dm = dayMetricsMap.get(date);
-            if (dm == null) {
-                dm = new DayMetric(date, kv.costPercent, tradeEntity.indexCloseAtEntry, kv.sno);
-                dayMetricsMap.put(date, dm);
+    private static String[] timeExitReason(int timeExit, Ohlc bar) {
+        if (timeExit == THURSDAY_EXIT) return new String[]{"ForceExit", "TimeExit"};
+        if (timeExit == END_TIME_EXIT) return new String[]{"EndTime", "ExitTime " + bar.time};
+        return new String[]{"MaxHolding", "HoldingLimit"};
+    }
+
+    private void extendPaths(Ohlc bar) {
+        boolean valuesRead = false;
+        double ema = 0, rsi = 0, pivot = 0;
+        for (ExcursionPath path : openPaths.values()) {
+            if (!path.movedBy(bar.high, bar.low)) continue;
+            if (!valuesRead) {
+                valuesRead = true;
+                ema = indexState.getEmaVal(kv.emaPeriod);
+                rsi = indexState.getRsiVal(kv.rsiPeriod);
+                pivot = indexState.pivotsInitialized ? indexState.pp : Double.NaN;
             }
-            dm.updateMetric(tradeEntity.overAllTradeMetric, dayMaxProfit, dayMaxProfitPercent);
+            path.add(bar.high, bar.low, bar.ln, ema, rsi, pivot);
+        }
+    }
+
+    // the time exit ends the path: every sweep variant is decided by now
+    private void closePath(TradeEntity trade, int timeExit, Ohlc bar) {
+        ExcursionPath path = openPaths.remove(trade);
+        if (path == null) return;
+        String[] reason = timeExitReason(timeExit, bar);
+        path.close(bar.high, bar.low, bar.ln, indexState.getEmaVal(kv.emaPeriod), indexState.getRsiVal(kv.rsiPeriod),
+                indexState.pivotsInitialized ? indexState.pp : Double.NaN, reason[0], reason[1]);
+        writeSweep(path);
+        if (trade.tradeSquared) ledger.release(trade);
+    }
+
+    private void writeSweep(ExcursionPath path) {
+        StopTargetSweep.write(path, kv);
+        for (StrategyImpl follower : costFollowers) StopTargetSweep.write(path, follower.kv);
+    }
+
+    // end of the day's impl or of the data: paths that never reached their time exit still decide the variants
+    // whose stop or target they hit
+    public void flushPaths() {
+        for (ExcursionPath path : openPaths.values()) {
+            writeSweep(path);
+            if (path.trade.tradeSquared) ledger.release(path.trade);
         }
+        openPaths.clear();
+    }
+
+    public void onTradeExit(String date, TradeEntity tradeEntity) {
+        for (DayMetricSink dayMetricsMap : dayMetricsMapList)
+            dayMetricsMap.addExit(date, kv.costPercent, tradeEntity.entryClose(), kv.sno,
+                    tradeEntity.overAllTradeMetric, dayMaxProfit, dayMaxProfitPercent);
     }
 
     private static boolean hasSetRegimeSetter(TradeEntity t) {
@@ -17,7 +17,13 @@ import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.*;
 
+import com.valar.basestrategy.entities.indicators.EntrySignal;
+import com.valar.basestrategy.entities.indicators.FirstTouchIndex;
+import com.valar.basestrategy.entities.indicators.IntrabarIndex;
+import com.valar.basestrategy.entities.indicators.PivotLevels;
 import com.valar.basestrategy.entities.indicators.RegimeDetector;
+import com.valar.basestrategy.entities.indicators.SessionBars;
+import com.valar.basestrategy.utils.KeyValues;
 
 public class State {
     public List<String> lines;
@@ -32,8 +38,15 @@ public class State {
     private Map<Integer, EMAIndicator> emaIndicatorMap = new HashMap<Integer,EMAIndicator>();
     private Map<Integer, RSIIndicator> rsiIndicatorMap = new HashMap<Integer,RSIIndicator>();
     //for pivots
-    public Float pp, r1, r2, s1, s2;
+    public float pp, r1, r2, s1, s2;
     public boolean pivotsInitialized ;
+    public PivotLevels pivotLevels;
+    private int pivotDay = -1;
+    public FirstTouchIndex firstTouchIndex;
+    public IntrabarIndex intrabarIndex;
+    public SessionBars sessionBars;
+    // entry predicates over the bars by EntrySignal.key, filled before a walk and only read during it
+    public Map<String, BitSet> entrySignals = new HashMap<>();
 
     //regime
     private RegimeDetector.Regime todayRegime;
@@ -350,20 +363,51 @@ public class State {
 
     }
     public double getEmaVal(int emaPeriod) {
-
-            return emaIndicatorMap.get(emaPeriod).getValue(parser).doubleValue();
+            return getEmaValAt(emaPeriod, parser);
     }
     public double getRsiVal(int rsiPeriod) {
-            return  rsiIndicatorMap.get(rsiPeriod).getValue(parser).doubleValue();
+            return getRsiValAt(rsiPeriod, parser);
+    }
+    public double getEmaValAt(int emaPeriod, int bar) {
+            return emaIndicatorMap.get(emaPeriod).getValue(bar).doubleValue();
+    }
+    public double getRsiValAt(int rsiPeriod, int bar) {
+            return  rsiIndicatorMap.get(rsiPeriod).getValue(bar).doubleValue();
+    }
+
+    public void loadPivotLevels(){
+        if(pivotLevels==null) pivotLevels = new PivotLevels(lines);
+    }
+
+    public void loadFirstTouchIndex(){
+        if(firstTouchIndex==null) firstTouchIndex = new FirstTouchIndex(lines);
+    }
+
+    public void loadEntrySignal(KeyValues kv){
+        entrySignals.computeIfAbsent(EntrySignal.key(kv), key -> EntrySignal.compute(this, kv));
     }
 
- public void computePivots(float high, float low, float close) {
-        this.pp = (high + low + close) / 3f;
-        this.r1 = 2 * pp - low;
-        this.s1 = 2 * pp - high;
-        this.r2 = pp + (high - low);
-        this.s2 = pp - (high - low);
-        this.pivotsInitialized = true;
+    public void loadIntrabarIndex(List<String> minuteLines){
+        if(intrabarIndex==null) intrabarIndex = new IntrabarIndex(lines, minuteLines);
+    }
+
+    public void loadSessionBars(){
+        if(sessionBars==null) sessionBars = new SessionBars(lines);
+    }
+
+    // switches pp/r1/r2/s1/s2 to the levels derived from the day before date
+    public void selectPivotDay(String date) {
+        if(pivotLevels==null) return;
+        int day = pivotLevels.getDay(date);
+        if(day == pivotDay) return;
+        pivotDay = day;
+        pivotsInitialized = pivotLevels.hasLevels(day);
+        if(!pivotsInitialized) return;
+        this.pp = pivotLevels.pp[day];
+        this.r1 = pivotLevels.r1[day];
+        this.s1 = pivotLevels.s1[day];
+        this.r2 = pivotLevels.r2[day];
+        this.s2 = pivotLevels.s2[day];
     }
 
     public float nearestAbove(float entryPrice, float high10) {
@@ -387,6 +431,27 @@ public class State {
         return entryPrice - 0.01f;
     }
 
+    // same as nearestAbove but searches the whole level table of the day
+    public float nearestLevelAbove(float entryPrice, float high10) {
+        if (!pivotsInitialized) throw new IllegalStateException("Pivots not initialized");
+
+        float level = pivotLevels.above(pivotDay, entryPrice);
+        if (!Float.isNaN(level)) return level;
+
+        if (high10 > entryPrice) return high10;
+        return entryPrice + 0.01f;
+    }
+
+    public float nearestLevelBelow(float entryPrice, float low10) {
+        if (!pivotsInitialized) throw new IllegalStateException("Pivots not initialized");
+
+        float level = pivotLevels.below(pivotDay, entryPrice);
+        if (!Float.isNaN(level)) return level;
+
+        if (low10 < entryPrice) return low10;
+        return entryPrice - 0.01f;
+    }
+
     /*public void loadAdxIndicator(List<Object> adxInputs){
         if(series==null) {
             series = loadSeries();
@@ -423,6 +488,19 @@ public class State {
         }else return null;
     }
 
+    // moves over the lines before nextLine the way getNext would, without handing them to anyone, so the next
+    // getNext returns lines[nextLine]
+    public void advanceTo(int nextLine){
+        if(parser+1 >= nextLine) return;
+        while(parser+1 < nextLine){
+            parser++;
+            line = lines.get(parser);
+            ohlc.update(line);
+            if("09:16".equals(ohlc.time)) gapPercent = Math.abs(ohlc.open - ohlc.lastMinClose)/ohlc.lastMinClose * 100;
+        }
+        if(parser+1<lines.size())nextOhlc.update(lines.get(parser+1));
+    }
+
     public float getGapPercent(){
         return gapPercent;
     }
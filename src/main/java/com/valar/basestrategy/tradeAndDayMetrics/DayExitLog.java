@@ -0,0 +1,49 @@
+package com.valar.basestrategy.tradeAndDayMetrics;
+
+import java.util.Arrays;
+import java.util.function.IntFunction;
+
+/**
+ * A DayMetricSink that only records its exits, in order, to add them to another sink later. An instrument run
+ * alongside others writes its share of shared sinks here; the logs are replayed in instrument order, which gives
+ * the shared sinks the same exits in the same order as a sequential run.
+ */
+public class DayExitLog implements DayMetricSink {
+    private int size;
+    private String[] date = new String[16];
+    private int[] sno = new int[16];
+    private float[] costPercent = new float[16], bnCloseAtEntry = new float[16],
+            dayMaxProfit = new float[16], dayMaxProfitPercent = new float[16];
+    private TradeMetric[] trade = new TradeMetric[16];
+
+    @Override
+    public void addExit(String date, float costPercent, float bnCloseAtEntry, int sno, TradeMetric trade,
+                        float dayMaxProfit, float dayMaxProfitPercent){
+        if(size == this.date.length) grow(size * 2);
+        this.date[size] = date;
+        this.sno[size] = sno;
+        this.costPercent[size] = costPercent;
+        this.bnCloseAtEntry[size] = bnCloseAtEntry;
+        this.dayMaxProfit[size] = dayMaxProfit;
+        this.dayMaxProfitPercent[size] = dayMaxProfitPercent;
+        this.trade[size] = trade;
+        size++;
+    }
+
+    // same result as if these exits had been added to the sink of their keystore sno directly
+    public void replayInto(IntFunction<DayMetricSink> targets){
+        for(int i = 0; i < size; i++)
+            targets.apply(sno[i]).addExit(date[i], costPercent[i], bnCloseAtEntry[i], sno[i], trade[i],
+                    dayMaxProfit[i], dayMaxProfitPercent[i]);
+    }
+
+    private void grow(int n){
+        date = Arrays.copyOf(date, n);
+        sno = Arrays.copyOf(sno, n);
+        costPercent = Arrays.copyOf(costPercent, n);
+        bnCloseAtEntry = Arrays.copyOf(bnCloseAtEntry, n);
+        dayMaxProfit = Arrays.copyOf(dayMaxProfit, n);
+        dayMaxProfitPercent = Arrays.copyOf(dayMaxProfitPercent, n);
+        trade = Arrays.copyOf(trade, n);
+    }
+}
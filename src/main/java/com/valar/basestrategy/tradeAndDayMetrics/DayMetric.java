@@ -1,13 +1,20 @@
 package com.valar.basestrategy.tradeAndDayMetrics;
 
+import com.valar.basestrategy.utils.ArrowTable;
+import com.valar.basestrategy.utils.CsvRow;
+import com.valar.basestrategy.utils.DayPnlMatrix;
 import com.valar.basestrategy.utils.PrintWriters;
 
+import static com.valar.basestrategy.application.PropertiesReader.properties;
+
 public class DayMetric extends TradeMetric {
     public float dayMaxProfit,dayMaxProfitPercent;
     private float costPercent,bnCloseAtEntry,cost;
     public int totalTrades;
     String date;
     private int sno; 
+    // printDayWise=false: no DayWise rows (e.g. with dayPnlMatrix=true)
+    static final boolean printDayWise = Boolean.parseBoolean(properties.getProperty("printDayWise","true"));
 
     public ProfitLossMetric tradeProfit = new ProfitLossMetric(),
     tradeProfitPercent = new ProfitLossMetric(),
@@ -16,7 +23,6 @@ public class DayMetric extends TradeMetric {
 
 
     public DayMetric(String date,float costPercent,float bnCloseAtEntry,int sno){
-        super(PrintWriters.dayWisePrintWriter);
         this.date = date;
         this.costPercent = costPercent;
         this.bnCloseAtEntry = bnCloseAtEntry;
@@ -24,8 +30,15 @@ public class DayMetric extends TradeMetric {
     }
 
     public void print(){
-        orderInfo.write(sno+","+date+","+ totalTrades +","+profit.profit
-                +","+ profitPercent.profit +","+profitWithCost.profit+","+profitPercentWithCost.profit+",\n");
+        DayPnlMatrix.put(sno,date,profitPercentWithCost.profit);
+        if(!printDayWise) return;
+        if(PrintWriters.csvOutput)
+            CsvRow.start().col(sno).col(date).col(totalTrades).col(profit.profit).col(profitPercent.profit)
+                    .col(profitWithCost.profit).col(profitPercentWithCost.profit).writeLine(PrintWriters.dayWise());
+        ArrowTable days = PrintWriters.dayWiseArrow();
+        if(days != null)
+            days.i32(sno).date(date).i32(totalTrades).f32(profit.profit).f32(profitPercent.profit)
+                    .f32(profitWithCost.profit).f32(profitPercentWithCost.profit).endRow();
 
     }
 
@@ -0,0 +1,82 @@
+package com.valar.basestrategy.tradeAndDayMetrics;
+
+import java.util.Iterator;
+
+import static com.valar.basestrategy.utils.ValarUtils.getDateKey;
+
+/**
+ * Days of one keystore folded, in the order they were first added, into its OverAllMetric and the running drawdown
+ * the calmar comes from. As a DayMetricSink it holds the days not folded yet. Once exits come in date order
+ * (exitsInDateOrder) an exit completes the days before its date, and those at the head are folded right away.
+ */
+public class DayMetricFold implements DayMetricSink {
+    private final OverAllMetric overAllMetric;
+    private final boolean printDayWise;
+    private float cumulativeNetProfitPercent, maxCumulativeProfitPercent = -Float.MAX_VALUE,
+            maxDrawDownPercentage = -Float.MAX_VALUE, netProfitPercent;
+    private final DayMetricMap open = new DayMetricMap();
+    private boolean inDateOrder;
+    // yyMMdd of the first open day, -1 when none is open
+    private int headKey = -1;
+
+    public DayMetricFold(OverAllMetric overAllMetric, boolean printDayWise){
+        this.overAllMetric = overAllMetric;
+        this.printDayWise = printDayWise;
+    }
+
+    public void fold(DayMetric dayMetric){
+        if(printDayWise) dayMetric.print();
+        drawDown(dayMetric.profitPercentWithCost.profit);
+        overAllMetric.updateMetric(dayMetric);
+    }
+
+    // no day gets exits from before the latest exit's date any more
+    public void exitsInDateOrder(){
+        inDateOrder = true;
+    }
+
+    @Override
+    public void addExit(String date, float costPercent, float bnCloseAtEntry, int sno, TradeMetric trade,
+                        float dayMaxProfit, float dayMaxProfitPercent){
+        if(inDateOrder && headKey != -1){
+            int key = getDateKey(date);
+            if(headKey < key) foldBefore(key);
+        }
+        open.addExit(date, costPercent, bnCloseAtEntry, sno, trade, dayMaxProfit, dayMaxProfitPercent);
+        if(headKey == -1) headKey = getDateKey(date);
+    }
+
+    // folds open days from the head while they are before key
+    private void foldBefore(int key){
+        Iterator<DayMetric> days = open.values().iterator();
+        headKey = -1;
+        while(days.hasNext()){
+            DayMetric dayMetric = days.next();
+            int dayKey = getDateKey(dayMetric.date);
+            if(dayKey >= key){
+                headKey = dayKey;
+                return;
+            }
+            fold(dayMetric);
+            days.remove();
+        }
+    }
+
+    // the day's profit% with cost on the running drawdown
+    void drawDown(float dayProfitPercentWithCost){
+        cumulativeNetProfitPercent += dayProfitPercentWithCost;
+        maxCumulativeProfitPercent = Float.max(maxCumulativeProfitPercent, cumulativeNetProfitPercent);
+        float drawDownPercent = maxCumulativeProfitPercent - cumulativeNetProfitPercent;
+        maxDrawDownPercentage = Float.max(maxDrawDownPercentage, drawDownPercent);
+        netProfitPercent += dayProfitPercentWithCost;
+    }
+
+    // folds the open days and prints the overall row of the days folded so far
+    public void finish(String keystoreLn, float costPercent){
+        open.values().forEach(this::fold);
+        open.clear();
+        headKey = -1;
+        overAllMetric.calmar = netProfitPercent/maxDrawDownPercentage;
+        overAllMetric.calculateOverAllMetricsAndPrint(keystoreLn, costPercent);
+    }
+}
@@ -0,0 +1,19 @@
+package com.valar.basestrategy.tradeAndDayMetrics;
+
+import java.util.LinkedHashMap;
+
+// days by date in the order they were first added, each a DayMetric
+public class DayMetricMap extends LinkedHashMap<String, DayMetric> implements DayMetricSink {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public void addExit(String date, float costPercent, float bnCloseAtEntry, int sno, TradeMetric trade,
+                        float dayMaxProfit, float dayMaxProfitPercent){
+        DayMetric dm = get(date);
+        if(dm == null){
+            dm = new DayMetric(date, costPercent, bnCloseAtEntry, sno);
+            put(date, dm);
+        }
+        dm.updateMetric(trade, dayMaxProfit, dayMaxProfitPercent);
+    }
+}
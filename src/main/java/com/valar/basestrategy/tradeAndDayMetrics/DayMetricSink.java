@@ -0,0 +1,8 @@
+package com.valar.basestrategy.tradeAndDayMetrics;
+
+// where a keystore's squared trades are added up by day
+public interface DayMetricSink {
+    // trade squared on date; dayMaxProfit/Percent as the keystore's day stood at the exit
+    void addExit(String date, float costPercent, float bnCloseAtEntry, int sno, TradeMetric trade,
+                 float dayMaxProfit, float dayMaxProfitPercent);
+}
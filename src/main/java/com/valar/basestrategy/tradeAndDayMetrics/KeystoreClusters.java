@@ -0,0 +1,173 @@
+package com.valar.basestrategy.tradeAndDayMetrics;
+
+import com.valar.basestrategy.utils.DayPnlMatrix;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+import static com.valar.basestrategy.application.PropertiesReader.properties;
+
+/**
+ * Keystores whose day Profit%WithCost (DayPnlMatrix) correlate at clusterCorrelation or more grouped into clusters
+ * (keystoreClusters=true), so a sweep's near copies show as one representative: the member with the best calmar.
+ * Each keystore gets a SimHash of its centred returns, one bit per random hyperplane; keystores sharing any of the
+ * clusterBands bands of clusterBandBits bits are candidates, and only candidates have their correlation computed.
+ * A bucket keeps one keystore per cluster it has seen, so the work stays near linear in the keystores. Clusters
+ * join through any matching pair. Keystores with fewer than two traded days or no variance are left out.
+ * The calmar is the keystore's overAllDetails Calmar, handed over as each batch finishes.
+ * Written to Outputs/KeystoreClusters.csv, clusters by their representative's calmar, the representative first.
+ */
+public class KeystoreClusters {
+    private static final boolean ENABLED = Boolean.parseBoolean(properties.getProperty("keystoreClusters","false"));
+    private static final double MIN_CORRELATION = Double.parseDouble(properties.getProperty("clusterCorrelation","0.95"));
+    private static final int BANDS = Integer.parseInt(properties.getProperty("clusterBands","8"));
+    private static final int BAND_BITS = Integer.parseInt(properties.getProperty("clusterBandBits","8"));
+    private static final long SEED = Long.parseLong(properties.getProperty("clusterSeed","1"));
+    private static final Map<Integer, Float> calmars = new ConcurrentHashMap<>();
+
+    private final DayPnlMatrix matrix;
+    private final int[] rows, parent;
+    private final float[][] unit;
+    private final float[] calmar;
+
+    private KeystoreClusters(DayPnlMatrix matrix, int[] rows){
+        this.matrix = matrix;
+        this.rows = rows;
+        parent = IntStream.range(0, rows.length).toArray();
+        unit = new float[rows.length][];
+        calmar = new float[rows.length];
+        IntStream.range(0, rows.length).parallel().forEach(i -> {
+            unit[i] = centredUnit(rows[i]);
+            calmar[i] = calmars.getOrDefault(matrix.sno(rows[i]), Float.NaN);
+        });
+    }
+
+    // a keystore's overall calmar, as printed in overAllDetails
+    public static void calmar(int sno, float calmar){
+        if(ENABLED) calmars.put(sno, calmar);
+    }
+
+    public static void write() throws Exception {
+        if(!ENABLED) return;
+        if(BANDS * BAND_BITS > 64) throw new IllegalArgumentException("clusterBands x clusterBandBits over 64");
+        DayPnlMatrix matrix = DayPnlMatrix.current();
+        List<Integer> kept = new ArrayList<>();
+        for(int r = 0; r < matrix.rows(); r++)
+            if(matrix.tradedDays(r) >= 2 && matrix.varies(r)) kept.add(r);
+        KeystoreClusters clusters = new KeystoreClusters(matrix, kept.stream().mapToInt(Integer::intValue).toArray());
+        clusters.join(clusters.signatures());
+        clusters.print();
+    }
+
+    // the row less its mean, scaled to length 1, so a dot product of two is their correlation
+    private float[] centredUnit(int row){
+        int days = matrix.days();
+        double mean = 0, norm = 0;
+        for(int d = 0; d < days; d++) mean += matrix.get(row, d);
+        mean /= days;
+        for(int d = 0; d < days; d++) norm += (matrix.get(row, d) - mean) * (matrix.get(row, d) - mean);
+        norm = Math.sqrt(norm);
+        float[] z = new float[days];
+        for(int d = 0; d < days; d++) z[d] = (float) ((matrix.get(row, d) - mean) / norm);
+        return z;
+    }
+
+    // bit b set when the keystore's returns lie on the positive side of hyperplane b
+    private long[] signatures(){
+        int bits = BANDS * BAND_BITS, days = matrix.days();
+        Random random = new Random(SEED);
+        float[][] planes = new float[bits][days];
+        for(float[] plane : planes)
+            for(int d = 0; d < days; d++) plane[d] = (float) random.nextGaussian();
+        long[] signatures = new long[rows.length];
+        IntStream.range(0, rows.length).parallel().forEach(i -> {
+            long signature = 0;
+            for(int b = 0; b < bits; b++)
+                if(dot(planes[b], unit[i]) > 0) signature |= 1L << b;
+            signatures[i] = signature;
+        });
+        return signatures;
+    }
+
+    private void join(long[] signatures){
+        long mask = BAND_BITS == 64 ? -1L : (1L << BAND_BITS) - 1;
+        for(int band = 0; band < BANDS; band++){
+            Map<Long, List<Integer>> buckets = new HashMap<>();
+            for(int i = 0; i < rows.length; i++){
+                List<Integer> bucket = buckets.computeIfAbsent(signatures[i] >>> (band * BAND_BITS) & mask, key -> new ArrayList<>());
+                boolean matched = false;
+                for(int j : bucket){
+                    if(find(i) == find(j) || dot(unit[i], unit[j]) >= MIN_CORRELATION){
+                        union(i, j);
+                        matched = true;
+                        break;
+                    }
+                }
+                if(!matched) bucket.add(i);
+            }
+        }
+    }
+
+    private void print() throws Exception {
+        Map<Integer, List<Integer>> members = new LinkedHashMap<>();
+        for(int i = 0; i < rows.length; i++) members.computeIfAbsent(find(i), root -> new ArrayList<>()).add(i);
+        List<Integer> representatives = new ArrayList<>();
+        for(List<Integer> cluster : members.values()){
+            int best = cluster.get(0);
+            for(int i : cluster) if(ranked(calmar[i]) > ranked(calmar[best])) best = i;
+            representatives.add(best);
+        }
+        representatives.sort((a, b) -> Float.compare(ranked(calmar[b]), ranked(calmar[a])));
+
+        try(PrintWriter out = new PrintWriter("./Outputs/KeystoreClusters.csv")){
+            out.write("cluster,sno,representative,correlation,calmar,tradedDays\n");
+            for(int c = 0; c < representatives.size(); c++){
+                int representative = representatives.get(c);
+                List<Integer> cluster = new ArrayList<>(members.get(find(representative)));
+                cluster.remove(Integer.valueOf(representative));
+                cluster.add(0, representative);
+                for(int i : cluster)
+                    out.write((c + 1) + "," + matrix.sno(rows[i]) + "," + (i == representative) + ","
+                            + correlation(i, representative) + "," + calmar[i] + "," + matrix.tradedDays(rows[i]) + "\n");
+            }
+        }
+    }
+
+    // float rounding can take a dot product of unit vectors just over 1
+    private float correlation(int i, int j){
+        return i == j ? 1 : Math.min(1, dot(unit[i], unit[j]));
+    }
+
+    // NaN calmars (no drawdown and no profit) rank last
+    private static float ranked(float calmar){
+        return Float.isNaN(calmar) ? Float.NEGATIVE_INFINITY : calmar;
+    }
+
+    private int find(int i){
+        while(parent[i] != i){
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    // the lower row is the root
+    private void union(int i, int j){
+        int a = find(i), b = find(j);
+        if(a < b) parent[b] = a;
+        else if(b < a) parent[a] = b;
+    }
+
+    private static float dot(float[] a, float[] b){
+        float s = 0;
+        for(int k = 0; k < a.length; k++) s += a[k] * b[k];
+        return s;
+    }
+}
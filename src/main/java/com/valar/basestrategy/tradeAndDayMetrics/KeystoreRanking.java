@@ -0,0 +1,110 @@
+package com.valar.basestrategy.tradeAndDayMetrics;
+
+import com.valar.basestrategy.application.ValarTrade;
+import com.valar.basestrategy.utils.PrintWriters;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+
+import static com.valar.basestrategy.application.PropertiesReader.properties;
+
+/**
+ * The rankTopK best and worst keystores by each of rankMetrics (overAllDetails column names), kept in bounded
+ * heaps as the overall rows are made, so a sweep's ranking needs neither the full file nor a sort of it. Rows
+ * with fewer than rankMinTrades trades or a NaN metric are not ranked; rankPerStock=true also ranks the stockwise
+ * rows within each stock. Equal values are ordered by the keystore's row in the keystore file, so parallel runs
+ * rank the same. Written to Outputs/TopKeystores.csv at the end.
+ */
+public class KeystoreRanking {
+    private static final int K = Integer.parseInt(properties.getProperty("rankTopK","0"));
+    private static final int MIN_TRADES = Integer.parseInt(properties.getProperty("rankMinTrades","0"));
+    private static final boolean PER_STOCK = Boolean.parseBoolean(properties.getProperty("rankPerStock","false"));
+    private static final String[] METRICS =
+            properties.getProperty("rankMetrics","Calmar,Profit(Cost),TradeExpectancy(Cost)").split(",");
+    private static final int[] COLUMNS = new int[METRICS.length];
+    static {
+        List<String> columns = Arrays.asList(PrintWriters.OVER_ALL_METRICS.split(","));
+        for(int m = 0; m < METRICS.length; m++){
+            METRICS[m] = METRICS[m].trim();
+            COLUMNS[m] = columns.indexOf(METRICS[m]);
+            if(K > 0 && COLUMNS[m] == -1) throw new IllegalArgumentException("rankMetrics: no overAllDetails column " + METRICS[m]);
+        }
+    }
+
+    private static final Comparator<Ranked> BEST_FIRST = (a, b) -> {
+        int byValue = Double.compare(b.value, a.value);
+        return byValue != 0 ? byValue : Integer.compare(a.keystoreRow, b.keystoreRow);
+    };
+
+    // "" for the serialWise rows, else the stock; per metric the kept best (worst on top) and worst (best on top)
+    private static final Map<String, List<PriorityQueue<Ranked>>> scopes = new TreeMap<>();
+
+    private static class Ranked {
+        final double value;
+        final int keystoreRow;
+        final String row;
+
+        Ranked(double value, int keystoreRow, String row){
+            this.value = value;
+            this.keystoreRow = keystoreRow;
+            this.row = row;
+        }
+    }
+
+    public static boolean enabled(){
+        return K > 0;
+    }
+
+    // keystoreRow: the keystore's row in the keystore file; values: the OVER_ALL_METRICS columns of a row;
+    // row: its text from the keystore on, made only when kept
+    static synchronized void offer(String stock, int keystoreRow, double[] values, Supplier<String> row){
+        if(values[1] < MIN_TRADES || (stock != null && !PER_STOCK)) return;
+        List<PriorityQueue<Ranked>> heaps = scopes.computeIfAbsent(stock == null ? "" : stock, scope -> {
+            List<PriorityQueue<Ranked>> list = new ArrayList<>();
+            for(int m = 0; m < METRICS.length; m++){
+                list.add(new PriorityQueue<>(BEST_FIRST.reversed()));
+                list.add(new PriorityQueue<>(BEST_FIRST));
+            }
+            return list;
+        });
+        String text = null;
+        for(int m = 0; m < METRICS.length; m++){
+            double value = values[COLUMNS[m]];
+            if(Double.isNaN(value)) continue;
+            Ranked candidate = new Ranked(value, keystoreRow, null);
+            for(int side = 0; side < 2; side++){
+                PriorityQueue<Ranked> heap = heaps.get(2 * m + side);
+                boolean keep = heap.size() < K || heap.comparator().compare(candidate, heap.peek()) > 0;
+                if(!keep) continue;
+                if(text == null) text = row.get();
+                if(heap.size() == K) heap.poll();
+                heap.add(new Ranked(value, keystoreRow, text));
+            }
+        }
+    }
+
+    public static void write() throws Exception {
+        if(!enabled()) return;
+        try(PrintWriter out = new PrintWriter("./Outputs/TopKeystores.csv")){
+            out.write("Metric,Side,Rank,Stock," + ValarTrade.keystoreHeading + "," + PrintWriters.OVER_ALL_METRICS + "\n");
+            scopes.forEach((stock, heaps) -> {
+                for(int m = 0; m < METRICS.length; m++){
+                    for(int side = 0; side < 2; side++){
+                        List<Ranked> ranked = new ArrayList<>(heaps.get(2 * m + side));
+                        ranked.sort(side == 0 ? BEST_FIRST : BEST_FIRST.reversed());
+                        for(int r = 0; r < ranked.size(); r++)
+                            out.write(METRICS[m] + "," + (side == 0 ? "top" : "bottom") + "," + (r + 1) + ","
+                                    + stock + "," + ranked.get(r).row + "\n");
+                    }
+                }
+            });
+        }
+    }
+}
@@ -1,9 +1,12 @@
 package com.valar.basestrategy.tradeAndDayMetrics;
 
 
+import com.valar.basestrategy.utils.ArrowTable;
+import com.valar.basestrategy.utils.CsvRow;
 import com.valar.basestrategy.utils.PrintWriters;
 
-import java.util.List;
+import static com.valar.basestrategy.application.PropertiesReader.properties;
+
 
 public class OverAllMetric extends TradeMetric {
     public float dayMaxProfitTotal,dayMaxProfitPercentTotal,dayMaxProfit,dayMaxLoss;
@@ -11,6 +14,8 @@ public class OverAllMetric extends TradeMetric {
     public float maxProfitPercent,maxLossPercent=Float.MAX_VALUE;
     public float maxProfit,maxLoss=Float.MAX_VALUE;
     public int tradingDays;
+    // the keystore's row in the keystore file, which KeystoreRanking orders equal values by
+    public int keystoreRow;
     public float totalHodingPeriod,calmar;
     public double totalHoldingPeriodCost;
 
@@ -18,15 +23,18 @@ public class OverAllMetric extends TradeMetric {
             tradeProfitPercent = new ProfitLossMetric(),
             tradeProfitWithCost = new ProfitLossMetric(),
             tradeProfitPercentWithCost = new ProfitLossMetric();
-    private String symbol="";
+    // printOverAll=false: only ranked (KeystoreRanking), no overAllDetails rows
+    static final boolean printOverAll = Boolean.parseBoolean(properties.getProperty("printOverAll","true"));
+    private String symbol="",stock;
+    private boolean stockWise;
 
     public OverAllMetric(){
-        super(PrintWriters.overAllPrintWriter);
     }
 
     public OverAllMetric(String symbol){
-        super(PrintWriters.stockOverAllPrintWriter);
         this.symbol = symbol+",";
+        this.stock = symbol;
+        this.stockWise = true;
     }
 
     public void calculateOverAllMetricsAndPrint(String ln,float costPercent){
@@ -36,22 +44,51 @@ public class OverAllMetric extends TradeMetric {
         float profitPerTradeAfterCostPercent=profitPercentWithCost.profit/totalTrades;
 //        System.out.println(profitPercentWithCost.getExpectancy());
 
-        orderInfo.write(symbol+ln+","+tradingDays + "," + totalTrades + "," + tradeMaxProfit + "," + tradeMaxLoss
-                + "," + dayMaxProfit + "," + dayMaxLoss + "," + tradeProfitPercentWithCost.getAvgProfit() + "," + tradeProfitPercentWithCost.getAvgLoss()
-                + "," + tradeProfit.getWinPercent() +","+ tradeProfitPercentWithCost.getWinPercent()+ "," + tradeProfitPercent.getExpectancy()
-                + "," + tradeProfitPercentWithCost.getExpectancy() + "," + profit.profit + "," + profitPercent.profit + "," + profit.getAvgProfit()
-                + "," + profit.getAvgLoss() + "," + profit.getWinPercent() + "," + profit.getExpectancy() + "," + profitWithCost.profit + "," + profitPercentWithCost.profit
-                + "," + profitWithCost.getWinPercent() + "," + profitWithCost.getAvgProfit() + "," + profitWithCost.getAvgLoss()
-                + "," + profitWithCost.getExpectancy() +","+holdingPeriodAvg+ ","+calmar+ ","+totalHoldingPeriodCost+ ","+profitPerTradeAfterCostPercent+"\n");
+        if(KeystoreRanking.enabled())
+            KeystoreRanking.offer(stockWise?stock:null,keystoreRow,metrics(holdingPeriodAvg,profitPerTradeAfterCostPercent),
+                    () -> row("",ln,holdingPeriodAvg,profitPerTradeAfterCostPercent).toString());
+        if(!printOverAll) return;
+        if(PrintWriters.csvOutput)
+            row(symbol,ln,holdingPeriodAvg,profitPerTradeAfterCostPercent)
+                    .writeLine(stockWise?PrintWriters.stockOverAll():PrintWriters.overAll());
+        ArrowTable table = stockWise?PrintWriters.stockOverAllArrow():PrintWriters.overAllArrow();
+        if(table != null){
+            if(stockWise) table.text(stock);
+            table.text(ln).i32(tradingDays).i32(totalTrades).f32(tradeMaxProfit).f32(tradeMaxLoss)
+                    .f32(dayMaxProfit).f32(dayMaxLoss).f32(tradeProfitPercentWithCost.getAvgProfit()).f32(tradeProfitPercentWithCost.getAvgLoss())
+                    .f32(tradeProfit.getWinPercent()).f32(tradeProfitPercentWithCost.getWinPercent()).f32(tradeProfitPercent.getExpectancy())
+                    .f32(tradeProfitPercentWithCost.getExpectancy()).f32(profit.profit).f32(profitPercent.profit).f32(profit.getAvgProfit())
+                    .f32(profit.getAvgLoss()).f32(profit.getWinPercent()).f32(profit.getExpectancy()).f32(profitWithCost.profit).f32(profitPercentWithCost.profit)
+                    .f32(profitWithCost.getWinPercent()).f32(profitWithCost.getAvgProfit()).f32(profitWithCost.getAvgLoss())
+                    .f32(profitWithCost.getExpectancy()).f32(holdingPeriodAvg).f32(calmar).f64(totalHoldingPeriodCost).f32(profitPerTradeAfterCostPercent)
+                    .endRow();
+        }
 
     }
 
+    // the overAllDetails row from the keystore on, after prefix
+    private CsvRow row(String prefix,String ln,float holdingPeriodAvg,float profitPerTradeAfterCostPercent){
+        return CsvRow.start().add(prefix).col(ln).col(tradingDays).col(totalTrades).col(tradeMaxProfit).col(tradeMaxLoss)
+                .col(dayMaxProfit).col(dayMaxLoss).col(tradeProfitPercentWithCost.getAvgProfit()).col(tradeProfitPercentWithCost.getAvgLoss())
+                .col(tradeProfit.getWinPercent()).col(tradeProfitPercentWithCost.getWinPercent()).col(tradeProfitPercent.getExpectancy())
+                .col(tradeProfitPercentWithCost.getExpectancy()).col(profit.profit).col(profitPercent.profit).col(profit.getAvgProfit())
+                .col(profit.getAvgLoss()).col(profit.getWinPercent()).col(profit.getExpectancy()).col(profitWithCost.profit).col(profitPercentWithCost.profit)
+                .col(profitWithCost.getWinPercent()).col(profitWithCost.getAvgProfit()).col(profitWithCost.getAvgLoss())
+                .col(profitWithCost.getExpectancy()).col(holdingPeriodAvg).col(calmar).col(totalHoldingPeriodCost).add(profitPerTradeAfterCostPercent);
+    }
 
-    public void update(List<TradeMetric> daysMetrics){
-        for(TradeMetric dayMetric: daysMetrics)
-            updateMetric((DayMetric) dayMetric);
+    // the PrintWriters.OVER_ALL_METRICS columns
+    private double[] metrics(float holdingPeriodAvg,float profitPerTradeAfterCostPercent){
+        return new double[]{tradingDays,totalTrades,tradeMaxProfit,tradeMaxLoss,
+                dayMaxProfit,dayMaxLoss,tradeProfitPercentWithCost.getAvgProfit(),tradeProfitPercentWithCost.getAvgLoss(),
+                tradeProfit.getWinPercent(),tradeProfitPercentWithCost.getWinPercent(),tradeProfitPercent.getExpectancy(),
+                tradeProfitPercentWithCost.getExpectancy(),profit.profit,profitPercent.profit,profit.getAvgProfit(),
+                profit.getAvgLoss(),profit.getWinPercent(),profit.getExpectancy(),profitWithCost.profit,profitPercentWithCost.profit,
+                profitWithCost.getWinPercent(),profitWithCost.getAvgProfit(),profitWithCost.getAvgLoss(),
+                profitWithCost.getExpectancy(),holdingPeriodAvg,calmar,totalHoldingPeriodCost,profitPerTradeAfterCostPercent};
     }
 
+
     public void updateMetric(DayMetric dayMetric){
         try {
             tradeProfit.copy(dayMetric.profit);
@@ -83,4 +120,33 @@ public class OverAllMetric extends TradeMetric {
         }catch (Exception e){e.printStackTrace();}
     }
 
+    // updateMetric for the open day of a StockDayColumns slot
+    void updateDay(StockDayColumns days, int s){
+        days.profit.copyInto(s, tradeProfit);
+        days.profitWithCost.copyInto(s, tradeProfitWithCost);
+        days.profitPercent.copyInto(s, tradeProfitPercent);
+        days.profitPercentWithCost.copyInto(s, tradeProfitPercentWithCost);
+
+        profit.add(days.profit.profit[s]);
+        profitWithCost.add(days.profitWithCost.profit[s]);
+        profitPercent.add(days.profitPercent.profit[s]);
+        profitPercentWithCost.add(days.profitPercentWithCost.profit[s]);
+
+        totalTrades += days.trades[s];
+        totalHoldingPeriod+=days.holdingPeriod[s];
+        totalHoldingPeriodCost+=days.holdingPeriodCost[s];
+
+        dayMaxProfitTotal += days.dayMaxProfit[s];
+        dayMaxProfitPercentTotal += days.dayMaxProfitPercent[s];
+        maxProfit = Float.max(maxProfit,days.maxProfit[s]);
+        maxLoss = Float.min(maxLoss,days.maxLoss[s]);
+        maxProfitPercent = Float.max(maxProfitPercent,days.maxProfitPercent[s]);
+        maxLossPercent = Float.min(maxLossPercent,days.maxLossPercent[s]);
+        dayMaxProfit=Float.max(dayMaxProfit,days.profit.profit[s]);
+        dayMaxLoss=Float.min(dayMaxLoss,days.profit.profit[s]);
+        tradeMaxProfit = Float.max(tradeMaxProfit,days.maxProfit[s]);
+        tradeMaxLoss = Float.min(tradeMaxLoss,days.maxLoss[s]);
+        tradingDays++;
+    }
+
 }
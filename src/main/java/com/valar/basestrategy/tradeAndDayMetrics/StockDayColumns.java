@@ -0,0 +1,164 @@
+package com.valar.basestrategy.tradeAndDayMetrics;
+
+import java.util.Arrays;
+
+import static com.valar.basestrategy.utils.ValarUtils.getDateKey;
+
+/**
+ * Per-stock day metrics of all keystores as parallel primitive columns, one slot per (keystore, symbol). An
+ * instrument's exits come in date order, so a slot only holds its open day (yyMMdd key): an exit on a later day
+ * folds the open one into the slot's stockwise OverAllMetric and starts the next in place. Exits are array
+ * updates with the same arithmetic as DayMetric.updateMetric. A symbol walked by several instruments gets its
+ * days added in turn, out of date order, so its slot is held: it keeps a DayMetricMap and folds it at the end.
+ */
+public class StockDayColumns {
+    private int size;
+    private OverAllMetric[] overAll = new OverAllMetric[16];
+    private DayMetricFold[] folds = new DayMetricFold[16];
+    private DayMetricMap[] held = new DayMetricMap[16];
+
+    int[] day = new int[16], trades = new int[16];
+    float[] holdingPeriod = new float[16], dayMaxProfit = new float[16], dayMaxProfitPercent = new float[16],
+            maxProfit = new float[16], maxLoss = new float[16], maxProfitPercent = new float[16],
+            maxLossPercent = new float[16];
+    double[] holdingPeriodCost = new double[16];
+    final ProfitLossColumns profit = new ProfitLossColumns(), profitWithCost = new ProfitLossColumns(),
+            profitPercent = new ProfitLossColumns(), profitPercentWithCost = new ProfitLossColumns();
+
+    // a slot folding into overAllMetric. Slots are all added (and held) before any walk, walks of different
+    // instruments then write different slots; a held slot takes one instrument's exits at a time
+    public int addSlot(OverAllMetric overAllMetric){
+        if(size == day.length) grow(size * 2);
+        int slot = size++;
+        overAll[slot] = overAllMetric;
+        folds[slot] = new DayMetricFold(overAllMetric, false);
+        day[slot] = -1;
+        return slot;
+    }
+
+    // the slot keeps its days in a map until finish
+    public void hold(int slot){
+        if(held[slot] == null) held[slot] = new DayMetricMap();
+    }
+
+    public boolean isHeld(int slot){
+        return held[slot] != null;
+    }
+
+    public DayMetricSink sink(int slot){
+        return held[slot] != null ? held[slot]
+                : (date, costPercent, bnCloseAtEntry, sno, trade, maxDayProfit, maxDayProfitPercent) ->
+                        addExit(slot, date, trade, maxDayProfit, maxDayProfitPercent);
+    }
+
+    private void addExit(int s, String date, TradeMetric trade, float maxDayProfit, float maxDayProfitPercent){
+        int key = getDateKey(date);
+        if(day[s] != key){
+            if(day[s] != -1) fold(s);
+            open(s, key);
+        }
+        holdingPeriod[s] += trade.totalHoldingPeriod;
+        holdingPeriodCost[s] += trade.totalHoldingPeriodCost;
+        dayMaxProfit[s] = Float.max(dayMaxProfit[s], maxDayProfit);
+        dayMaxProfitPercent[s] = Float.max(dayMaxProfitPercent[s], maxDayProfitPercent);
+        maxProfit[s] = Float.max(maxProfit[s], trade.profit.profit);
+        maxLoss[s] = Float.min(maxLoss[s], trade.profit.profit);
+        maxProfitPercent[s] = Float.max(maxProfitPercent[s], trade.profitPercent.profit);
+        maxLossPercent[s] = Float.min(maxLossPercent[s], trade.profitPercent.profit);
+        profit.add(s, trade.profit.profit);
+        profitWithCost.add(s, trade.profitWithCost.profit);
+        profitPercent.add(s, trade.profitPercent.profit);
+        profitPercentWithCost.add(s, trade.profitPercentWithCost.profit);
+        trades[s]++;
+    }
+
+    // starting values of a DayMetric
+    private void open(int s, int key){
+        day[s] = key;
+        trades[s] = 0;
+        holdingPeriod[s] = 0;
+        holdingPeriodCost[s] = 0;
+        dayMaxProfit[s] = dayMaxProfitPercent[s] = 0;
+        maxProfit[s] = maxProfitPercent[s] = -Float.MAX_VALUE;
+        maxLoss[s] = maxLossPercent[s] = Float.MAX_VALUE;
+        profit.reset(s);
+        profitWithCost.reset(s);
+        profitPercent.reset(s);
+        profitPercentWithCost.reset(s);
+    }
+
+    private void fold(int s){
+        folds[s].drawDown(profitPercentWithCost.profit[s]);
+        overAll[s].updateDay(this, s);
+    }
+
+    // folds the open (or held) days and prints the slot's stockwise row
+    public void finish(int slot, String keystoreLn, float costPercent){
+        if(held[slot] != null) held[slot].values().forEach(folds[slot]::fold);
+        else if(day[slot] != -1) fold(slot);
+        day[slot] = -1;
+        folds[slot].finish(keystoreLn, costPercent);
+    }
+
+    private void grow(int n){
+        overAll = Arrays.copyOf(overAll, n);
+        folds = Arrays.copyOf(folds, n);
+        held = Arrays.copyOf(held, n);
+        day = Arrays.copyOf(day, n);
+        trades = Arrays.copyOf(trades, n);
+        holdingPeriod = Arrays.copyOf(holdingPeriod, n);
+        holdingPeriodCost = Arrays.copyOf(holdingPeriodCost, n);
+        dayMaxProfit = Arrays.copyOf(dayMaxProfit, n);
+        dayMaxProfitPercent = Arrays.copyOf(dayMaxProfitPercent, n);
+        maxProfit = Arrays.copyOf(maxProfit, n);
+        maxLoss = Arrays.copyOf(maxLoss, n);
+        maxProfitPercent = Arrays.copyOf(maxProfitPercent, n);
+        maxLossPercent = Arrays.copyOf(maxLossPercent, n);
+        profit.grow(n);
+        profitWithCost.grow(n);
+        profitPercent.grow(n);
+        profitPercentWithCost.grow(n);
+    }
+
+    // a ProfitLossMetric per slot
+    static class ProfitLossColumns {
+        int[] tradesOrDays = new int[16], inProfit = new int[16], inLoss = new int[16];
+        float[] profit = new float[16], profitOfProfitables = new float[16], lossOfLosables = new float[16];
+
+        void add(int s, float p){
+            profit[s] += p;
+            tradesOrDays[s]++;
+            if(p >= 0){
+                inProfit[s]++;
+                profitOfProfitables[s] += p;
+            } else {
+                inLoss[s]++;
+                lossOfLosables[s] += p;
+            }
+        }
+
+        // target.copy of the slot's metric
+        void copyInto(int s, ProfitLossMetric target){
+            target.tradesOrDays += tradesOrDays[s];
+            target.profit += profit[s];
+            target.inProfit += inProfit[s];
+            target.inLoss += inLoss[s];
+            target.profitOfProfitables += profitOfProfitables[s];
+            target.lossOfLosables += lossOfLosables[s];
+        }
+
+        void reset(int s){
+            tradesOrDays[s] = inProfit[s] = inLoss[s] = 0;
+            profit[s] = profitOfProfitables[s] = lossOfLosables[s] = 0;
+        }
+
+        void grow(int n){
+            tradesOrDays = Arrays.copyOf(tradesOrDays, n);
+            inProfit = Arrays.copyOf(inProfit, n);
+            inLoss = Arrays.copyOf(inLoss, n);
+            profit = Arrays.copyOf(profit, n);
+            profitOfProfitables = Arrays.copyOf(profitOfProfitables, n);
+            lossOfLosables = Arrays.copyOf(lossOfLosables, n);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.valar.basestrategy.tradeAndDayMetrics;
+
+import com.valar.basestrategy.entities.ExcursionPath;
+import com.valar.basestrategy.entities.Ohlc;
+import com.valar.basestrategy.entities.TradeEntity;
+import com.valar.basestrategy.utils.CsvRow;
+import com.valar.basestrategy.utils.KeyValues;
+import com.valar.basestrategy.utils.PrintWriters;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static com.valar.basestrategy.application.PropertiesReader.properties;
+
+/**
+ * Stop/target variants re-evaluated on the excursion path of every entry, written to OrderInfo[sweep].csv with
+ * the OrderInfo columns after the variant name. The grid comes from the stopTargetSweep file, one
+ * "variant,stop,target" row per variant, each level one of
+ *   pivot    the level the keystore placed (reproduces OrderInfo)
+ *   hhvllv   LLV of the 10 bars before entry below, HHV above
+ *   pct:x    x percent from the entry close
+ *   none     never hit
+ */
+public class StopTargetSweep {
+    public static final List<Variant> variants = loadVariants(properties.getProperty("stopTargetSweep", ""));
+
+    public static boolean enabled(){
+        return !variants.isEmpty();
+    }
+
+    public static class Variant {
+        public final String name, stop, target;
+
+        Variant(String name, String stop, String target){
+            this.name = name;
+            this.stop = stop;
+            this.target = target;
+            level(stop, null, true);
+            level(target, null, false);
+        }
+
+        public double stopLoss(TradeEntity trade){
+            return level(stop, trade, true);
+        }
+
+        public double target(TradeEntity trade){
+            return level(target, trade, false);
+        }
+    }
+
+    private static List<Variant> loadVariants(String file){
+        if(file.isEmpty()) return Collections.emptyList();
+        try {
+            List<Variant> variants = new ArrayList<>();
+            List<String> lines = Files.readAllLines(Paths.get(file));
+            for(String ln : lines.subList(Math.min(1, lines.size()), lines.size())){
+                if(ln.trim().isEmpty()) continue;
+                String[] splits = ln.split(",");
+                variants.add(new Variant(splits[0].trim(), splits[1].trim(), splits[2].trim()));
+            }
+            return variants;
+        }catch (IOException e){
+            throw new UncheckedIOException("stopTargetSweep file " + file, e);
+        }
+    }
+
+    // trade == null only validates the spec
+    private static double level(String spec, TradeEntity trade, boolean stop){
+        boolean below = stop == (trade == null || trade.lOrS() == 'l');
+        if(spec.equals("none")) return Double.NaN;
+        if(spec.equals("pivot")) return trade == null ? 0 : stop ? trade.stopLoss() : trade.target();
+        if(spec.equals("hhvllv")) return trade == null ? 0 : below ? trade.llv() : trade.hhv();
+        if(spec.startsWith("pct:")){
+            double percent = Double.parseDouble(spec.substring(4));
+            if(trade == null) return 0;
+            float entry = trade.entryClose();
+            return below ? entry * (1 - percent / 100) : entry * (1 + percent / 100);
+        }
+        throw new IllegalArgumentException("stopTargetSweep level " + spec);
+    }
+
+    // one row per variant for a path whose time exit is known
+    public static void write(ExcursionPath path, KeyValues kv){
+        for(Variant variant : variants){
+            TradeEntity trade = path.trade;
+            double stopLoss = variant.stopLoss(trade), target = variant.target(trade);
+            int i = path.exitAt(stopLoss, target);
+            if(i == -1) continue;
+            String reason, reasonInfo;
+            if(path.stopHitAt(i, stopLoss)){ reason = "StopLoss"; reasonInfo = "SL-hit"; }
+            else if(path.targetHitAt(i, target)){ reason = "Target"; reasonInfo = "TP-hit"; }
+            else { reason = path.timeExitReason; reasonInfo = path.timeExitReasonInfo; }
+            writeRow(variant.name, path, i, reason, reasonInfo, kv);
+        }
+    }
+
+    // same arithmetic and layout as TradeEntity.TradeAttrib and TradeMetric
+    private static void writeRow(String variant, ExcursionPath path, int i, String reason, String reasonInfo, KeyValues kv){
+        TradeEntity trade = path.trade;
+        char lOrS = path.lOrS;
+        Ohlc exitOhlc = new Ohlc(path.line(i));
+        float entryPrice = trade.entryClose();
+
+        float profit, profitPercent, profitWithCost, profitPercentWithCost, maxProfitPercent;
+        float entryPriceCost = (entryPrice / 100) * kv.costPercent;
+        float exitPriceCost = (exitOhlc.close / 100) * kv.costPercent;
+        if(lOrS == 'l'){
+            profit = exitOhlc.close - entryPrice;
+            profitPercent = (exitOhlc.close - entryPrice) / entryPrice * 100;
+            profitWithCost = ((exitOhlc.close - exitPriceCost) - (entryPrice + entryPriceCost));
+            profitPercentWithCost = (((exitOhlc.close - exitPriceCost) - (entryPrice + entryPriceCost)) / (entryPrice + entryPriceCost) * 100);
+            maxProfitPercent = (path.maxHigh(i) - entryPrice) / entryPrice * 100;
+        }else{
+            profit = entryPrice - exitOhlc.close;
+            profitPercent = (entryPrice - exitOhlc.close) / entryPrice * 100;
+            profitWithCost = ((entryPrice - entryPriceCost) - (exitOhlc.close + exitPriceCost));
+            profitPercentWithCost = (((entryPrice - entryPriceCost) - (exitOhlc.close + exitPriceCost)) / (entryPrice - entryPriceCost) * 100);
+            maxProfitPercent = (entryPrice - path.minLow(i)) / entryPrice * 100;
+        }
+
+        double holdingPeriodInMinutes = TradeMetric.getMinutesDifference(trade.entryDnt(), exitOhlc.dnt);
+        float holdingPeriodInDay = (float) holdingPeriodInMinutes/24/60;
+        double holdingPeriodCost = TradeMetric.getHoldingPeriodCost(holdingPeriodInMinutes, kv.hpCostPercent);
+        float afterHpCostProfitPercentCost = (float) (profitPercentWithCost-holdingPeriodCost);
+
+        CsvRow row = CsvRow.start().col(variant).col(kv.sno).col("").col(exitOhlc.date).col(trade.tradeId).col(holdingPeriodInDay)
+                .col(lOrS).col("Entry").col(trade.entryDate()).col(trade.entryTime()).col(entryPrice)
+                .add(trade.entryEma()).col(kv.emaTag).add(trade.entryRsi()).col(kv.rsiTag).col(trade.entryPivot())
+                .col(trade.pdh()).col(trade.cdh()).col(trade.hhv()).col(trade.pdl()).col(trade.cdl()).col(trade.llv())
+                .col("Exit").col(exitOhlc.date).col(exitOhlc.time).col(exitOhlc.close)
+                .add(path.ema(i)).col(kv.emaTag).add(path.rsi(i)).col(kv.rsiTag).col(path.pivot(i))
+                .col(reason).col(reasonInfo).col(profit).col(profitPercent).col(maxProfitPercent)
+                .col(profitWithCost).col(afterHpCostProfitPercentCost);
+        trade.printAttribs(row).col(exitOhlc.close).add(holdingPeriodCost).writeLine(PrintWriters.sweep());
+    }
+}
@@ -3,11 +3,12 @@ package com.valar.basestrategy.tradeAndDayMetrics;
 
 
 import com.valar.basestrategy.entities.Ohlc;
+import com.valar.basestrategy.entities.TradeEntity;
+import com.valar.basestrategy.utils.ArrowTable;
+import com.valar.basestrategy.utils.CsvRow;
 import com.valar.basestrategy.utils.KeyValues;
-import com.valar.basestrategy.utils.PrintAttribs;
 import com.valar.basestrategy.utils.PrintWriters;
 
-import java.io.PrintWriter;
 import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
@@ -24,180 +25,98 @@ public class TradeMetric {
     profitPercentWithCost = new ProfitLossMetric();
 
     protected float totalSell,totalBuy;
-    PrintWriter orderInfo;
     public float totalHoldingPeriod;
     public double totalHoldingPeriodCost;
     private double holdingPeriodCost;
 
 
     public char lOrS;
-    public Ohlc entryOhlc,exitOhlc;
 
-    boolean isPrinting = Boolean.parseBoolean(properties.getProperty("printOrderInfo"));
+    static final boolean isPrinting = Boolean.parseBoolean(properties.getProperty("printOrderInfo"));
+    private static final DateTimeFormatter DNT_FORMAT = DateTimeFormatter.ofPattern("dd-MM-yy HH:mm");
 
     public TradeMetric(){}
 
-    public TradeMetric(PrintWriter orderInfo){
-        this.orderInfo = orderInfo;
-    }
-
-    public TradeMetric(Ohlc entryOhlc,char lOrS){
-        this.entryOhlc = entryOhlc;
-        this.lOrS = lOrS;
-        this.orderInfo = PrintWriters.orderInfoPrintWriter;
-    }
+    // totals of one trade squared on exitOhlc at exitPrice, its OrderInfo row printed
+    public static TradeMetric squared(TradeEntity trade, KeyValues kv, Ohlc exitOhlc, float exitPrice, String reason, String reasonInfo){
+        char lOrS = trade.lOrS();
+        float entryPrice = trade.entryClose();
+        float profit, profitPercent, profitWithCost, profitPercentWithCost;
+        float entryPriceCost = (entryPrice / 100) * kv.costPercent;
+        float exitPriceCost = (exitPrice / 100) * kv.costPercent;
+        if(lOrS == 'l'){
+            profit = exitPrice - entryPrice;
+            profitPercent = (exitPrice - entryPrice) / entryPrice * 100;
+            profitWithCost = ((exitPrice - exitPriceCost) - (entryPrice + entryPriceCost));
+            profitPercentWithCost = (((exitPrice - exitPriceCost) - (entryPrice + entryPriceCost)) / (entryPrice + entryPriceCost) * 100);
+        }else{
+            profit = entryPrice - exitPrice;
+            profitPercent = (entryPrice - exitPrice) / entryPrice * 100;
+            profitWithCost = ((entryPrice - entryPriceCost) - (exitPrice + exitPriceCost));
+            profitPercentWithCost = (((entryPrice - entryPriceCost) - (exitPrice + exitPriceCost)) / (entryPrice - entryPriceCost) * 100);
+        }
 
-    public void calculateOverAllMetricsAndPrint(
-            float profitPercent,
-            float profitWithCost,
-            float profitPercentWithCost,
-            String reason,
-            String reasonInfo,
-            int id,
-            int holdingPeriod,
-            KeyValues kv,
-            Ohlc exitOhlc,
-            float indexClose,
-            String option,
-            PrintAttribs printAttribs,
-            float tradeMaxProfit,
-            double entryEma,
-            double entryRsi,
-            double entryPivot,
-            double exitEma,
-            double exitRsi,
-            double exitPivot
-    ){
-        this.exitOhlc = exitOhlc;
-        if(lOrS =='l') this.profit.add(exitOhlc.close - entryOhlc.close);
-        else this.profit.add(entryOhlc.close - exitOhlc.close);
-
-//        changes for hp related -------
-        String entryDate=entryOhlc.dnt;
-        String exitDate=exitOhlc.dnt;
-        double holdingPeriodInMinutes=getMinutesDifference(entryDate,exitDate);
-        float holdingPeriodInDay=(float) holdingPeriodInMinutes/24/60;
-
-
-        this.totalHoldingPeriod+= holdingPeriodInDay;
-        holdingPeriodCost=getHoldingPeriodCost(holdingPeriodInMinutes, kv.hpCostPercent);
-        this.totalHoldingPeriodCost+= holdingPeriodCost;
-
-        float afterHpCostProfitPercentCost= (float) (profitPercentWithCost-holdingPeriodCost);
-
-        this.profitPercent.add(profitPercent);
-        this.profitWithCost.add(profitWithCost);
-        this.profitPercentWithCost.add(afterHpCostProfitPercentCost);
-
-
-
-        totalTrades = 1;
-
-        if(isPrinting){
-            /*orderInfo.write(kv.sno + "," + option + "," + exitOhlc.date + "," + id + "," + holdingPeriodInDay + "," +
-                    lOrS + ",Entry," + entryOhlc.date + "," + entryOhlc.time + "," +
-                    entryOhlc.close+",Exit," + exitOhlc.date + "," + exitOhlc.time + "," + exitOhlc.close + "," + reason + "," +
-                    reasonInfo + "," + profit.profit + "," + profitPercent +"," + tradeMaxProfit + "," +
-                    profitWithCost + "," + afterHpCostProfitPercentCost + "," +
-                    printAttribs + "," + indexClose  + "," + this.holdingPeriodCost + "\n");
-*/
-               PrintWriters.orderInfoPrintWriter.write(
-                        kv.sno + "," + option + "," + exitOhlc.date + "," + id + "," + holdingPeriodInDay + "," +
-                                lOrS + ",Entry," + entryOhlc.date + "," + entryOhlc.time + "," + entryOhlc.close + "," +
-                                entryEma+"("+kv.emaPeriod+")" + "," + entryRsi +"("+kv.rsiLong+"-"+kv.rsiShort+")" + "," + entryPivot + "," +
-                                "Exit," + exitOhlc.date + "," + exitOhlc.time + "," + exitOhlc.close + "," +
-                                exitEma+"("+kv.emaPeriod+")" + "," + exitRsi+"("+kv.rsiLong+"-"+kv.rsiShort+")" + "," + exitPivot + "," +
-                                reason + "," + reasonInfo + "," + profit.profit + "," + profitPercent + "," + tradeMaxProfit + "," +
-                                profitWithCost + "," + afterHpCostProfitPercentCost + "," +
-                                printAttribs + "," + indexClose  + "," + this.holdingPeriodCost + "\n"
-                );
-        PrintWriters.orderInfoPrintWriter.flush();
+        String entryDnt = trade.entryDnt();
+        double holdingPeriodInMinutes = getMinutesDifference(entryDnt, exitOhlc.dnt);
+        float holdingPeriodInDay = (float) holdingPeriodInMinutes/24/60;
+        double holdingPeriodCost = getHoldingPeriodCost(holdingPeriodInMinutes, kv.hpCostPercent);
+        float afterHpCostProfitPercentCost = (float) (profitPercentWithCost-holdingPeriodCost);
+
+        TradeMetric metric = new TradeMetric();
+        metric.lOrS = lOrS;
+        metric.profit.add(profit);
+        metric.profitPercent.add(profitPercent);
+        metric.profitWithCost.add(profitWithCost);
+        metric.profitPercentWithCost.add(afterHpCostProfitPercentCost);
+        metric.totalHoldingPeriod += holdingPeriodInDay;
+        metric.holdingPeriodCost = holdingPeriodCost;
+        metric.totalHoldingPeriodCost += holdingPeriodCost;
+        if(lOrS == 'l') {
+            metric.totalBuy += entryPrice;
+            metric.totalSell += exitPrice;
+        }else{
+            metric.totalBuy += exitPrice;
+            metric.totalSell += entryPrice;
         }
+        metric.totalTrades = 1;
+
+        if(isPrinting && PrintWriters.csvOutput){
+            CsvRow row = CsvRow.start().col(kv.sno).col("").col(exitOhlc.date).col(trade.tradeId).col(holdingPeriodInDay)
+                    .col(lOrS).col("Entry");
+            int space = entryDnt.indexOf(' ');
+            if(space == -1) row.col(entryDnt).col((String) null);
+            else row.col(entryDnt, 0, space).col(entryDnt, space + 1, entryDnt.length());
+            row.col(entryPrice)
+                    .add(trade.entryEma()).col(kv.emaTag).add(trade.entryRsi()).col(kv.rsiTag).col(trade.entryPivot())
+                    .col(trade.pdh()).col(trade.cdh()).col(trade.hhv()).col(trade.pdl()).col(trade.cdl()).col(trade.llv())
+                    .col("Exit").col(exitOhlc.date).col(exitOhlc.time).col(exitPrice)
+                    .add(trade.exitEma()).col(kv.emaTag).add(trade.exitRsi()).col(kv.rsiTag).col(trade.exitPivot())
+                    .col(reason).col(reasonInfo).col(metric.profit.profit).col(profitPercent).col(trade.tradeMaxProfit())
+                    .col(profitWithCost).col(afterHpCostProfitPercentCost);
+            trade.printAttribs(row).col(exitOhlc.close).add(holdingPeriodCost).writeLine(PrintWriters.orderInfo());
         }
-    public void calculateOverAllMetricsAndPrint(
-            float profitPercent,
-            float profitWithCost,
-            float profitPercentWithCost,
-            String reason,
-            String reasonInfo,
-            int id,
-            int holdingPeriod,
-            KeyValues kv,
-            Ohlc exitOhlc,
-            float indexClose,
-            String option,
-            PrintAttribs printAttribs,
-            float tradeMaxProfit,
-            double entryEma,
-            double entryRsi,
-            double entryPivot,
-            float pdh,
-            float cdh,
-            double hhv,
-            float pdl,
-            float cdl,
-            double llv,
-            double exitEma,
-            double exitRsi,
-            double exitPivot
-    ){
-        this.exitOhlc = exitOhlc;
-        if(lOrS =='l') this.profit.add(exitOhlc.close - entryOhlc.close);
-        else this.profit.add(entryOhlc.close - exitOhlc.close);
-
-//        changes for hp related -------
-        String entryDate=entryOhlc.dnt;
-        String exitDate=exitOhlc.dnt;
-        double holdingPeriodInMinutes=getMinutesDifference(entryDate,exitDate);
-        float holdingPeriodInDay=(float) holdingPeriodInMinutes/24/60;
-
-
-        this.totalHoldingPeriod+= holdingPeriodInDay;
-        holdingPeriodCost=getHoldingPeriodCost(holdingPeriodInMinutes, kv.hpCostPercent);
-        this.totalHoldingPeriodCost+= holdingPeriodCost;
-
-        float afterHpCostProfitPercentCost= (float) (profitPercentWithCost-holdingPeriodCost);
-
-        this.profitPercent.add(profitPercent);
-        this.profitWithCost.add(profitWithCost);
-        this.profitPercentWithCost.add(afterHpCostProfitPercentCost);
-
-
-
-        totalTrades = 1;
-
-        if(isPrinting){
-            /*orderInfo.write(kv.sno + "," + option + "," + exitOhlc.date + "," + id + "," + holdingPeriodInDay + "," +
-                    lOrS + ",Entry," + entryOhlc.date + "," + entryOhlc.time + "," +
-                    entryOhlc.close+",Exit," + exitOhlc.date + "," + exitOhlc.time + "," + exitOhlc.close + "," + reason + "," +
-                    reasonInfo + "," + profit.profit + "," + profitPercent +"," + tradeMaxProfit + "," +
-                    profitWithCost + "," + afterHpCostProfitPercentCost + "," +
-                    printAttribs + "," + indexClose  + "," + this.holdingPeriodCost + "\n");
-*/
-            PrintWriters.orderInfoPrintWriter.write(
-                    kv.sno + "," + option + "," + exitOhlc.date + "," + id + "," + holdingPeriodInDay + "," +
-                            lOrS + ",Entry," + entryOhlc.date + "," + entryOhlc.time + "," + entryOhlc.close + "," +
-                            entryEma+"("+kv.emaPeriod+")" + "," + entryRsi +"("+kv.rsiLong+"-"+kv.rsiShort+")" + "," + entryPivot + ","
-                            +pdh+","+cdh+"," + hhv + ","+pdl+","+cdl +","+ llv + "," +
-                            "Exit," + exitOhlc.date + "," + exitOhlc.time + "," + exitOhlc.close + "," +
-                            exitEma+"("+kv.emaPeriod+")" + "," + exitRsi+"("+kv.rsiLong+"-"+kv.rsiShort+")" + "," + exitPivot + "," +
-                            reason + "," + reasonInfo + "," + profit.profit + "," + profitPercent + "," + tradeMaxProfit + "," +
-                            profitWithCost + "," + afterHpCostProfitPercentCost + "," +
-                            printAttribs + "," + indexClose  + "," + this.holdingPeriodCost + "\n"
-            );
-            PrintWriters.orderInfoPrintWriter.flush();
+        ArrowTable trades = PrintWriters.orderInfoArrow();
+        if(isPrinting && trades != null){
+            trades.i32(kv.sno).i32(trade.tradeId).f32(holdingPeriodInDay).text(String.valueOf(lOrS))
+                    .time(entryDnt).f32(entryPrice).f64(trade.entryEma()).f64(trade.entryRsi()).f64(trade.entryPivot())
+                    .f32(trade.pdh()).f32(trade.cdh()).f64(trade.hhv()).f32(trade.pdl()).f32(trade.cdl()).f64(trade.llv())
+                    .time(exitOhlc.dnt).f32(exitPrice).f64(trade.exitEma()).f64(trade.exitRsi()).f64(trade.exitPivot())
+                    .text(reason).text(reasonInfo).f32(metric.profit.profit).f32(profitPercent).f32(trade.tradeMaxProfit())
+                    .f32(profitWithCost).f32(afterHpCostProfitPercentCost).f64(trade.dayAtrPercent()).f64(trade.dayAtrPercentage())
+                    .f64(holdingPeriodCost).endRow();
         }
+        return metric;
     }
-    public double getHoldingPeriodCost(double mins,double hpCostPercent){
+
+    public static double getHoldingPeriodCost(double mins,double hpCostPercent){
         return  (mins/24/60)*hpCostPercent;
 
     }
 
-    public  double getMinutesDifference(String dnt1, String dnt2) {
+    public static double getMinutesDifference(String dnt1, String dnt2) {
         try {
-            DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd-MM-yy HH:mm");
-            LocalDateTime dateTime1 = LocalDateTime.parse(dnt1, formatter);
-            LocalDateTime dateTime2 = LocalDateTime.parse(dnt2, formatter);
+            LocalDateTime dateTime1 = LocalDateTime.parse(dnt1, DNT_FORMAT);
+            LocalDateTime dateTime2 = LocalDateTime.parse(dnt2, DNT_FORMAT);
             Duration duration = Duration.between(dateTime1, dateTime2);
 
             return duration.toMinutes();
@@ -207,28 +126,4 @@ public class TradeMetric {
         }
     }
 
-    public void updateOverAll(TradeMetric tradeMetric){
-        profit.copy(tradeMetric.profit);
-        profitWithCost.copy(tradeMetric.profitWithCost);
-        profitPercent.copy(tradeMetric.profitPercent);
-        profitPercentWithCost.copy(tradeMetric.profitPercentWithCost);
-
-        totalHoldingPeriod+=tradeMetric.totalHoldingPeriod;
-        totalHoldingPeriodCost+=tradeMetric.holdingPeriodCost;
-
-        if(tradeMetric.lOrS =='l') {
-            totalBuy += tradeMetric.entryOhlc.close;
-            totalSell += tradeMetric.exitOhlc.close;
-        }else{
-            totalBuy += tradeMetric.exitOhlc.close;
-            totalSell += tradeMetric.entryOhlc.close;
-        }
-
-        totalTrades = 1;
-    }
-
-    public void closePrinter(){
-        orderInfo.close();
-    }
-
 }
@@ -0,0 +1,174 @@
+package com.valar.basestrategy.utils;
+
+import com.valar.basestrategy.utils.ArrowTable.Type;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An ArrowTable as an Arrow IPC file (format V5): magic, schema message, a record batch per full table, then at
+ * close the dictionary batches of its TEXT columns and the footer listing them all. Readers take dictionaries
+ * from the footer before any batch, so they can come last. Columns have no nulls, so validity buffers are empty.
+ */
+final class ArrowFile {
+    private static final byte[] MAGIC = "ARROW1".getBytes(StandardCharsets.US_ASCII);
+    private static final int V5 = 4;
+    private static final int SCHEMA = 1, DICTIONARY_BATCH = 2, RECORD_BATCH = 3;
+
+    private final OutputStream out;
+    private long position;
+    private final Flat.Bytes body = new Flat.Bytes(), dictionaryBlocks = new Flat.Bytes(), batchBlocks = new Flat.Bytes();
+    private int dictionaryCount, batchCount;
+
+    ArrowFile(String path, ArrowTable table) throws IOException {
+        out = new BufferedOutputStream(new FileOutputStream(path), 1 << 16);
+        write(MAGIC, MAGIC.length);
+        write(new byte[2], 2);
+        body.clear();
+        message(SCHEMA, schema(table));
+    }
+
+    // the table's rows as one record batch
+    void writeBatch(ArrowTable table) throws IOException {
+        body.clear();
+        Flat.Bytes nodes = new Flat.Bytes(), buffers = new Flat.Bytes();
+        for(int c = 0; c < table.types.length; c++){
+            node(nodes, table.rows);
+            buffer(buffers, body.size(), 0);
+            int start = body.size();
+            Object column = table.columns[c];
+            for(int r = 0; r < table.rows; r++){
+                switch(table.types[c]){
+                    case FLOAT32: body.f32(((float[]) column)[r]); break;
+                    case FLOAT64: body.f64(((double[]) column)[r]); break;
+                    case TIMESTAMP: body.i64(((long[]) column)[r]); break;
+                    default: body.i32(((int[]) column)[r]);
+                }
+            }
+            buffer(buffers, start, body.size() - start);
+            body.pad(8);
+        }
+        long offset = position;
+        int metadata = message(RECORD_BATCH, recordBatch(table.rows, nodes, buffers, table.types.length));
+        block(batchBlocks, offset, metadata, body.size());
+        batchCount++;
+    }
+
+    void close(ArrowTable table) throws IOException {
+        if(table.rows > 0) writeBatch(table);
+        for(int c = 0; c < table.types.length; c++){
+            List<String> values = table.dictionaries.get(c);
+            if(values == null) continue;
+            body.clear();
+            Flat.Bytes nodes = new Flat.Bytes(), buffers = new Flat.Bytes();
+            node(nodes, values.size());
+            buffer(buffers, 0, 0);
+            List<byte[]> utf8 = new ArrayList<>();
+            int end = 0;
+            body.i32(0);
+            for(String value : values){
+                byte[] b = value.getBytes(StandardCharsets.UTF_8);
+                utf8.add(b);
+                end += b.length;
+                body.i32(end);
+            }
+            buffer(buffers, 0, body.size());
+            body.pad(8);
+            int start = body.size();
+            for(byte[] b : utf8) body.put(b, 0, b.length);
+            buffer(buffers, start, body.size() - start);
+            body.pad(8);
+            Flat.Table dictionaryBatch = new Flat.Table().i64(0, c)
+                    .ref(1, recordBatch(values.size(), nodes, buffers, 1)).bool(2, false);
+            long offset = position;
+            int metadata = message(DICTIONARY_BATCH, dictionaryBatch);
+            block(dictionaryBlocks, offset, metadata, body.size());
+            dictionaryCount++;
+        }
+        Flat.Table footer = new Flat.Table().i16(0, V5).ref(1, schema(table))
+                .ref(2, new Flat.Structs(dictionaryBlocks, dictionaryCount))
+                .ref(3, new Flat.Structs(batchBlocks, batchCount));
+        byte[] flat = Flat.finish(footer);
+        write(flat, flat.length);
+        Flat.Bytes tail = new Flat.Bytes();
+        tail.i32(flat.length);
+        write(tail.toArray(), 4);
+        write(MAGIC, MAGIC.length);
+        out.close();
+    }
+
+    // continuation marker, metadata length, metadata padded to 8, then body; the length of all but the body
+    private int message(int headerType, Flat.Table header) throws IOException {
+        Flat.Table message = new Flat.Table().i16(0, V5).u8(1, headerType).ref(2, header).i64(3, body.size());
+        byte[] flat = Flat.finish(message);
+        Flat.Bytes prefix = new Flat.Bytes();
+        prefix.i32(-1);
+        prefix.i32(flat.length);
+        write(prefix.toArray(), 8);
+        write(flat, flat.length);
+        write(body.array(), body.size());
+        return 8 + flat.length;
+    }
+
+    private static Flat.Table recordBatch(int length, Flat.Bytes nodes, Flat.Bytes buffers, int columns){
+        return new Flat.Table().i64(0, length)
+                .ref(1, new Flat.Structs(nodes, columns))
+                .ref(2, new Flat.Structs(buffers, buffers.size() / 16));
+    }
+
+    private static Flat.Table schema(ArrowTable table){
+        List<Flat.Table> fields = new ArrayList<>();
+        for(int c = 0; c < table.types.length; c++) fields.add(field(table.names[c], table.types[c], c));
+        return new Flat.Table().i16(0, 0).ref(1, new Flat.Tables(fields));
+    }
+
+    // Type union ids: Int 2, FloatingPoint 3, Utf8 5, Date 8, Timestamp 10
+    private static Flat.Table field(String name, Type type, int dictionaryId){
+        Flat.Table field = new Flat.Table().ref(0, new Flat.Text(name)).bool(1, false);
+        switch(type){
+            case INT32: field.u8(2, 2).ref(3, int32()); break;
+            case FLOAT32: field.u8(2, 3).ref(3, new Flat.Table().i16(0, 1)); break;
+            case FLOAT64: field.u8(2, 3).ref(3, new Flat.Table().i16(0, 2)); break;
+            case DATE: field.u8(2, 8).ref(3, new Flat.Table().i16(0, 0)); break;
+            case TIMESTAMP: field.u8(2, 10).ref(3, new Flat.Table().i16(0, 0)); break;
+            default:
+                field.u8(2, 5).ref(3, new Flat.Table())
+                        .ref(4, new Flat.Table().i64(0, dictionaryId).ref(1, int32()).bool(2, false));
+        }
+        return field.ref(5, new Flat.Tables(new ArrayList<>()));
+    }
+
+    private static Flat.Table int32(){
+        return new Flat.Table().i32(0, 32).bool(1, true);
+    }
+
+    // FieldNode: length, null count
+    private static void node(Flat.Bytes nodes, long length){
+        nodes.i64(length);
+        nodes.i64(0);
+    }
+
+    // Buffer: offset in the body, length
+    private static void buffer(Flat.Bytes buffers, long offset, long length){
+        buffers.i64(offset);
+        buffers.i64(length);
+    }
+
+    // Block: offset, metadata length (4 bytes padding), body length
+    private static void block(Flat.Bytes blocks, long offset, int metadata, long bodyLength){
+        blocks.i64(offset);
+        blocks.i32(metadata);
+        blocks.i32(0);
+        blocks.i64(bodyLength);
+    }
+
+    private void write(byte[] b, int len) throws IOException {
+        out.write(b, 0, len);
+        position += len;
+    }
+}
@@ -0,0 +1,175 @@
+package com.valar.basestrategy.utils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.valar.basestrategy.application.PropertiesReader.properties;
+
+/**
+ * Rows of one output table as typed columns, filled a row at a time in column order. A table with a path is an
+ * Arrow IPC file (ArrowFile) written in record batches of arrowBatchRows rows; one without is kept in memory for
+ * a PrintWriters.Buffer and appended to the file's table in order. TEXT columns are dictionary-encoded: int32
+ * indices into the strings seen so far, written once per file at close. DATE is Arrow Date32 (days),
+ * TIMESTAMP a Timestamp(second) on the bar's minute, both in exchange time without a zone.
+ */
+public class ArrowTable {
+    public enum Type { INT32, FLOAT32, FLOAT64, DATE, TIMESTAMP, TEXT }
+
+    private static final int BATCH_ROWS = Integer.parseInt(properties.getProperty("arrowBatchRows","65536"));
+
+    final String[] names;
+    final Type[] types;
+    final Object[] columns;
+    final List<List<String>> dictionaries = new ArrayList<>();
+    private final List<Map<String,Integer>> codes = new ArrayList<>();
+    int rows;
+    private int column, capacity = 64;
+    private final ArrowFile file;
+
+    // schema: name, Type pairs
+    public ArrowTable(String path, Object... schema){
+        int n = schema.length / 2;
+        names = new String[n];
+        types = new Type[n];
+        columns = new Object[n];
+        for(int c = 0; c < n; c++){
+            names[c] = (String) schema[2 * c];
+            types[c] = (Type) schema[2 * c + 1];
+            columns[c] = newColumn(types[c], capacity);
+            dictionaries.add(types[c] == Type.TEXT ? new ArrayList<>() : null);
+            codes.add(types[c] == Type.TEXT ? new HashMap<>() : null);
+        }
+        try { file = path == null ? null : new ArrowFile(path, this); }
+        catch (IOException e){ throw new UncheckedIOException(e); }
+    }
+
+    // an in-memory table with the same columns
+    public ArrowTable inMemory(){
+        Object[] schema = new Object[2 * names.length];
+        for(int c = 0; c < names.length; c++){
+            schema[2 * c] = names[c];
+            schema[2 * c + 1] = types[c];
+        }
+        return new ArrowTable(null, schema);
+    }
+
+    public ArrowTable i32(int v){
+        ((int[]) next())[rows] = v;
+        return this;
+    }
+
+    public ArrowTable f32(float v){
+        ((float[]) next())[rows] = v;
+        return this;
+    }
+
+    public ArrowTable f64(double v){
+        ((double[]) next())[rows] = v;
+        return this;
+    }
+
+    // dd-MM-yy
+    public ArrowTable date(String date){
+        return i32(epochDay(date));
+    }
+
+    public ArrowTable day(long epochDay){
+        return i32((int) epochDay);
+    }
+
+    // dd-MM-yy HH:mm, midnight when there is no time
+    public ArrowTable time(String dnt){
+        long mins = dnt.length() >= 14 ? ((dnt.charAt(9)-'0')*10 + (dnt.charAt(10)-'0'))*60 + (dnt.charAt(12)-'0')*10 + (dnt.charAt(13)-'0') : 0;
+        ((long[]) next())[rows] = (epochDay(dnt) * 1440L + mins) * 60;
+        return this;
+    }
+
+    public ArrowTable text(String s){
+        int c = column;
+        Integer code = codes.get(c).get(s);
+        if(code == null){
+            code = dictionaries.get(c).size();
+            dictionaries.get(c).add(s);
+            codes.get(c).put(s, code);
+        }
+        return i32(code);
+    }
+
+    public void endRow(){
+        column = 0;
+        rows++;
+        if(file != null && rows == BATCH_ROWS) writeBatch();
+    }
+
+    // appends the rows to target, then empties this table
+    public void appendTo(ArrowTable target){
+        for(int r = 0; r < rows; r++){
+            for(int c = 0; c < columns.length; c++){
+                switch(types[c]){
+                    case FLOAT32: target.f32(((float[]) columns[c])[r]); break;
+                    case FLOAT64: target.f64(((double[]) columns[c])[r]); break;
+                    case TIMESTAMP: ((long[]) target.next())[target.rows] = ((long[]) columns[c])[r]; break;
+                    case TEXT: target.text(dictionaries.get(c).get(((int[]) columns[c])[r])); break;
+                    default: target.i32(((int[]) columns[c])[r]);
+                }
+            }
+            target.endRow();
+        }
+        rows = 0;
+    }
+
+    // the last batch, the dictionaries and the footer
+    public void close(){
+        if(file == null) return;
+        try { file.close(this); }
+        catch (IOException e){ throw new UncheckedIOException(e); }
+    }
+
+    private void writeBatch(){
+        try { file.writeBatch(this); }
+        catch (IOException e){ throw new UncheckedIOException(e); }
+        rows = 0;
+    }
+
+    // the column the next value of the row goes to, grown to hold the row
+    private Object next(){
+        if(rows == capacity){
+            capacity *= 2;
+            for(int c = 0; c < columns.length; c++) columns[c] = grow(columns[c], capacity);
+        }
+        return columns[column++];
+    }
+
+    private static Object newColumn(Type type, int n){
+        switch(type){
+            case FLOAT32: return new float[n];
+            case FLOAT64: return new double[n];
+            case TIMESTAMP: return new long[n];
+            default: return new int[n];
+        }
+    }
+
+    private static Object grow(Object column, int n){
+        if(column instanceof float[]) return Arrays.copyOf((float[]) column, n);
+        if(column instanceof double[]) return Arrays.copyOf((double[]) column, n);
+        if(column instanceof long[]) return Arrays.copyOf((long[]) column, n);
+        return Arrays.copyOf((int[]) column, n);
+    }
+
+    // days since 1970-01-01 of a dd-MM-yy date (20yy)
+    static int epochDay(String date){
+        int d = (date.charAt(0)-'0')*10 + (date.charAt(1)-'0');
+        int m = (date.charAt(3)-'0')*10 + (date.charAt(4)-'0');
+        int y = 2000 + (date.charAt(6)-'0')*10 + (date.charAt(7)-'0');
+        if(m <= 2) y--;
+        int era = y / 400, yoe = y - era * 400;
+        int doy = (153 * (m + (m > 2 ? -3 : 9)) + 2) / 5 + d - 1;
+        int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146097 + doe - 719468;
+    }
+}
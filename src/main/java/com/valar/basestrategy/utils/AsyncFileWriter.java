@@ -0,0 +1,141 @@
+package com.valar.basestrategy.utils;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+
+import static com.valar.basestrategy.application.PropertiesReader.properties;
+
+/**
+ * An output file written by one background thread shared by all AsyncFileWriters. Rows are appended to a chunk
+ * in memory that is handed off once it holds outputChunkChars chars or is older than outputFlushMillis; the
+ * writer thread writes chunks in the order they were handed off and flushes the files it wrote once it has
+ * nothing queued. The queue holds outputQueueChunks chunks, so an engine far ahead of the disk waits instead of
+ * piling up rows. Callers serialize on the writer (PrintWriter does), so rows keep their order.
+ */
+public class AsyncFileWriter extends Writer {
+    private static final int CHUNK_CHARS = Integer.parseInt(properties.getProperty("outputChunkChars","65536"));
+    private static final long FLUSH_NANOS = Long.parseLong(properties.getProperty("outputFlushMillis","1000")) * 1_000_000L;
+    private static final BlockingQueue<Chunk> queue =
+            new ArrayBlockingQueue<>(Integer.parseInt(properties.getProperty("outputQueueChunks","64")));
+    private static Thread writerThread;
+
+    private final Writer file;
+    private StringBuilder pending = new StringBuilder();
+    private long pendingSince;
+    private volatile IOException failure;
+    private boolean closed;
+
+    // text for target, or its end when done is set
+    private static class Chunk {
+        final AsyncFileWriter target;
+        final String text;
+        final CountDownLatch done;
+
+        Chunk(AsyncFileWriter target, String text, CountDownLatch done){
+            this.target = target;
+            this.text = text;
+            this.done = done;
+        }
+    }
+
+    public AsyncFileWriter(String path) throws IOException {
+        file = new BufferedWriter(new FileWriter(path), 1 << 16);
+        startWriterThread();
+    }
+
+    private static synchronized void startWriterThread(){
+        if(writerThread != null) return;
+        writerThread = new Thread(AsyncFileWriter::drain, "output-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    private static void drain(){
+        Set<AsyncFileWriter> dirty = new LinkedHashSet<>();
+        while(true){
+            Chunk chunk;
+            try { chunk = queue.take(); }
+            catch (InterruptedException e){ return; }
+            AsyncFileWriter target = chunk.target;
+            try {
+                if(chunk.done != null){
+                    dirty.remove(target);
+                    target.file.close();
+                } else {
+                    target.file.write(chunk.text);
+                    dirty.add(target);
+                }
+            } catch (IOException e){ target.failure = e; }
+            if(chunk.done != null) chunk.done.countDown();
+            if(queue.isEmpty()){
+                for(AsyncFileWriter writer : dirty){
+                    try { writer.file.flush(); }
+                    catch (IOException e){ writer.failure = e; }
+                }
+                dirty.clear();
+            }
+        }
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        if(pending.length() == 0) pendingSince = System.nanoTime();
+        pending.append(cbuf, off, len);
+        handOffIfDue();
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        if(pending.length() == 0) pendingSince = System.nanoTime();
+        pending.append(str, off, off + len);
+        handOffIfDue();
+    }
+
+    private void handOffIfDue() throws IOException {
+        if(pending.length() >= CHUNK_CHARS || System.nanoTime() - pendingSince >= FLUSH_NANOS) handOff();
+    }
+
+    private void handOff() throws IOException {
+        if(failure != null) throw failure;
+        if(pending.length() == 0) return;
+        put(new Chunk(this, pending.toString(), null));
+        pending = new StringBuilder();
+    }
+
+    // hands off what is pending; the writer thread writes and flushes it once it gets to it
+    @Override
+    public void flush() throws IOException {
+        if(!closed) handOff();
+    }
+
+    // waits until everything written before is on disk
+    @Override
+    public void close() throws IOException {
+        if(closed) return;
+        handOff();
+        closed = true;
+        CountDownLatch done = new CountDownLatch(1);
+        put(new Chunk(this, null, done));
+        try { done.await(); }
+        catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+        if(failure != null) throw failure;
+    }
+
+    private static void put(Chunk chunk) throws IOException {
+        try { queue.put(chunk); }
+        catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+    }
+}
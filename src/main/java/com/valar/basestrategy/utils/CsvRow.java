@@ -0,0 +1,51 @@
+package com.valar.basestrategy.utils;
+
+import java.io.PrintWriter;
+
+/**
+ * An output row built in the calling thread's reused buffer and written to a PrintWriter in one call, without the
+ * String of each field and of the whole row that concatenation makes. Numbers are appended with the same digits
+ * as Float/Double.toString, so rows are the same bytes.
+ */
+public class CsvRow {
+    private static final ThreadLocal<CsvRow> current = ThreadLocal.withInitial(CsvRow::new);
+
+    private final StringBuilder row = new StringBuilder(512);
+    private char[] chars = new char[512];
+
+    // the calling thread's row, emptied
+    public static CsvRow start(){
+        CsvRow csvRow = current.get();
+        csvRow.row.setLength(0);
+        return csvRow;
+    }
+
+    public CsvRow add(String s){ row.append(s); return this; }
+    public CsvRow add(char c){ row.append(c); return this; }
+    public CsvRow add(int i){ row.append(i); return this; }
+    public CsvRow add(float f){ row.append(f); return this; }
+    public CsvRow add(double d){ row.append(d); return this; }
+
+    // value and the separator after it
+    public CsvRow col(String s){ row.append(s).append(','); return this; }
+    public CsvRow col(char c){ row.append(c).append(','); return this; }
+    public CsvRow col(int i){ row.append(i).append(','); return this; }
+    public CsvRow col(float f){ row.append(f).append(','); return this; }
+    public CsvRow col(double d){ row.append(d).append(','); return this; }
+    public CsvRow col(String s, int start, int end){ row.append(s, start, end).append(','); return this; }
+
+    // the row so far, without a line end
+    @Override
+    public String toString(){
+        return row.toString();
+    }
+
+    // the row and a line end
+    public void writeLine(PrintWriter writer){
+        row.append('\n');
+        int length = row.length();
+        if(chars.length < length) chars = new char[Math.max(length, chars.length * 2)];
+        row.getChars(0, length, chars, 0);
+        writer.write(chars, 0, length);
+    }
+}
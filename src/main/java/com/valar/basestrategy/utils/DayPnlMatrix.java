@@ -0,0 +1,153 @@
+package com.valar.basestrategy.utils;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.valar.basestrategy.application.PropertiesReader.properties;
+
+/**
+ * Profit% with cost of every keystore and trading day (dayPnlMatrix=true) as a dense float matrix in a
+ * memory-mapped file, Outputs/DayPnl.matrix, so portfolio and correlation analysis can map just the rows or
+ * days it needs instead of pivoting DayWise[overAll].csv. Rows are keystores in keystore file order, columns the
+ * dates of dayPnlMatrixDays (a day bar file, default regimeDayPath). Little-endian:
+ * <pre>
+ * header   int magic "VPNL", int version 1, int rows, int days, long matrix offset, long mask offset
+ * index    int sno[rows], int epochDay[days], zero padded to 8 bytes
+ * matrix   float[rows][days], 0 on days without trades
+ * mask     long[rows][(days+63)/64], bit d%64 of word d/64 set on the days the keystore traded
+ * </pre>
+ * Keystores fill their own rows, so batches run in parallel write to the file without locking. A keystore day
+ * whose date is not in dayPnlMatrixDays has no column: it is left out and counted, the count printed at close.
+ */
+public class DayPnlMatrix {
+    private static final int MAGIC = 0x4C4E5056, VERSION = 1, HEADER = 32;
+    private static final long SEGMENT = 1L << 30;
+
+    private static DayPnlMatrix matrix;
+
+    private final Map<Integer, Integer> rows = new HashMap<>();
+    private final Map<String, Integer> days = new HashMap<>();
+    private final int[] snos;
+    private final LocalDate[] dates;
+    private final int dayCount, words;
+    private final long matrixOffset, maskOffset;
+    private final MappedByteBuffer[] segments;
+    private final AtomicInteger skipped = new AtomicInteger();
+
+    private DayPnlMatrix(String path, int[] snos, LocalDate[] dates) throws IOException {
+        this.snos = snos;
+        this.dates = dates;
+        for(int r = 0; r < snos.length; r++)
+            if(rows.put(snos[r], r) != null) throw new IllegalArgumentException("dayPnlMatrix: keystore sno " + snos[r] + " repeats");
+        int[] epochDays = new int[dates.length];
+        for(int d = 0; d < dates.length; d++){
+            days.put(String.format("%02d-%02d-%02d", dates[d].getDayOfMonth(), dates[d].getMonthValue(), dates[d].getYear() % 100), d);
+            epochDays[d] = (int) dates[d].toEpochDay();
+        }
+        dayCount = dates.length;
+        words = (dayCount + 63) / 64;
+        matrixOffset = align8(HEADER + 4L * (snos.length + dayCount));
+        maskOffset = align8(matrixOffset + 4L * snos.length * dayCount);
+        long size = maskOffset + 8L * snos.length * words;
+
+        try(RandomAccessFile file = new RandomAccessFile(path, "rw")){
+            file.setLength(0);
+            file.setLength(size);
+            FileChannel channel = file.getChannel();
+            segments = new MappedByteBuffer[(int) ((size + SEGMENT - 1) / SEGMENT)];
+            for(int s = 0; s < segments.length; s++){
+                segments[s] = channel.map(FileChannel.MapMode.READ_WRITE, s * SEGMENT, Math.min(SEGMENT, size - s * SEGMENT));
+                segments[s].order(ByteOrder.LITTLE_ENDIAN);
+            }
+        }
+        MappedByteBuffer header = segments[0];
+        header.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, snos.length).putInt(12, dayCount)
+                .putLong(16, matrixOffset).putLong(24, maskOffset);
+        for(int r = 0; r < snos.length; r++) putInt(HEADER + 4L * r, snos[r]);
+        for(int d = 0; d < dayCount; d++) putInt(HEADER + 4L * (snos.length + d), epochDays[d]);
+    }
+
+    // the file for these keystores, when dayPnlMatrix=true or a Portfolio or KeystoreClusters is made from it
+    public static void open(int[] snos) throws IOException {
+        if(!Boolean.parseBoolean(properties.getProperty("dayPnlMatrix","false"))
+                && properties.getProperty("portfolio","").isEmpty()
+                && !Boolean.parseBoolean(properties.getProperty("keystoreClusters","false"))) return;
+        DayIterator dayBars = new DayIterator(properties.getProperty("dayPnlMatrixDays",properties.getProperty("regimeDayPath")));
+        List<LocalDate> dates = new ArrayList<>();
+        for(DayIterator.Row bar = dayBars.poll(); bar != null; bar = dayBars.poll())
+            if(dates.isEmpty() || !dates.get(dates.size() - 1).equals(bar.date)) dates.add(bar.date);
+        matrix = new DayPnlMatrix("./Outputs/DayPnl.matrix", snos, dates.toArray(new LocalDate[0]));
+    }
+
+    // a keystore's profit% with cost on a dd-MM-yy day
+    public static void put(int sno, String date, float profitPercentWithCost){
+        if(matrix == null) return;
+        Integer row = matrix.rows.get(sno), day = matrix.days.get(date);
+        if(row == null) throw new IllegalStateException("dayPnlMatrix: no row for sno " + sno);
+        if(day == null){
+            matrix.skipped.incrementAndGet();
+            return;
+        }
+        matrix.putFloat(matrix.matrixOffset + 4L * ((long) row * matrix.dayCount + day), profitPercentWithCost);
+        long word = matrix.maskOffset + 8L * ((long) row * matrix.words + day / 64);
+        matrix.putLong(word, matrix.getLong(word) | 1L << (day % 64));
+    }
+
+    // the open matrix, or null
+    public static DayPnlMatrix current(){
+        return matrix;
+    }
+
+    public int rows(){ return snos.length; }
+    public int days(){ return dayCount; }
+    public int sno(int row){ return snos[row]; }
+    public LocalDate date(int day){ return dates[day]; }
+
+    public float get(int row, int day){
+        long at = matrixOffset + 4L * ((long) row * dayCount + day);
+        return segments[(int) (at / SEGMENT)].getFloat((int) (at % SEGMENT));
+    }
+
+    public boolean traded(int row, int day){
+        return (getLong(maskOffset + 8L * ((long) row * words + day / 64)) & 1L << (day % 64)) != 0;
+    }
+
+    public int tradedDays(int row){
+        int traded = 0;
+        for(int w = 0; w < words; w++) traded += Long.bitCount(getLong(maskOffset + 8L * ((long) row * words + w)));
+        return traded;
+    }
+
+    // whether the row has two different values, so a variance to work with
+    public boolean varies(int row){
+        for(int d = 1; d < dayCount; d++) if(get(row, d) != get(row, 0)) return true;
+        return false;
+    }
+
+    public static void close(){
+        if(matrix == null) return;
+        for(MappedByteBuffer segment : matrix.segments) segment.force();
+        if(matrix.skipped.get() > 0)
+            System.err.println("dayPnlMatrix: " + matrix.skipped.get() + " keystore days left out, their dates not in dayPnlMatrixDays");
+        matrix = null;
+    }
+
+    // values are aligned to their size and SEGMENT is a multiple of 8, so none straddles two segments
+    private void putInt(long at, int v){ segments[(int) (at / SEGMENT)].putInt((int) (at % SEGMENT), v); }
+    private void putFloat(long at, float v){ segments[(int) (at / SEGMENT)].putFloat((int) (at % SEGMENT), v); }
+    private void putLong(long at, long v){ segments[(int) (at / SEGMENT)].putLong((int) (at % SEGMENT), v); }
+    private long getLong(long at){ return segments[(int) (at / SEGMENT)].getLong((int) (at % SEGMENT)); }
+
+    private static long align8(long n){
+        return (n + 7) & ~7L;
+    }
+}
@@ -0,0 +1,213 @@
+package com.valar.basestrategy.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Just enough of the flatbuffers format for the Arrow IPC metadata ArrowFile writes. A buffer is laid out front
+ * to back: each table's vtable, then the table, then what its fields refer to, so every offset points forward.
+ * Tables start 4 bytes past an 8-byte boundary and hold their fields largest first, which keeps every scalar
+ * aligned to its size.
+ */
+final class Flat {
+    private Flat(){}
+
+    abstract static class Node {}
+
+    static final class Table extends Node {
+        private final List<Field> fields = new ArrayList<>();
+
+        Table bool(int slot, boolean value){ return scalar(slot, 1, value ? 1 : 0); }
+        Table u8(int slot, int value){ return scalar(slot, 1, value); }
+        Table i16(int slot, int value){ return scalar(slot, 2, value); }
+        Table i32(int slot, int value){ return scalar(slot, 4, value); }
+        Table i64(int slot, long value){ return scalar(slot, 8, value); }
+
+        Table ref(int slot, Node child){
+            fields.add(new Field(slot, 4, 0, child));
+            return this;
+        }
+
+        private Table scalar(int slot, int size, long bits){
+            fields.add(new Field(slot, size, bits, null));
+            return this;
+        }
+    }
+
+    private static final class Field {
+        final int slot, size;
+        final long bits;
+        final Node ref;
+
+        Field(int slot, int size, long bits, Node ref){
+            this.slot = slot;
+            this.size = size;
+            this.bits = bits;
+            this.ref = ref;
+        }
+    }
+
+    static final class Text extends Node {
+        final byte[] utf8;
+
+        Text(String text){ utf8 = text.getBytes(StandardCharsets.UTF_8); }
+    }
+
+    // vector of tables
+    static final class Tables extends Node {
+        final List<Table> elements;
+
+        Tables(List<Table> elements){ this.elements = elements; }
+    }
+
+    // vector of structs of count 8-byte aligned elements, laid out in bytes
+    static final class Structs extends Node {
+        final Bytes bytes;
+        final int count;
+
+        Structs(Bytes bytes, int count){
+            this.bytes = bytes;
+            this.count = count;
+        }
+    }
+
+    // root offset, the tree, padded to 8 bytes
+    static byte[] finish(Table root){
+        Bytes out = new Bytes();
+        out.i32(0);
+        out.putI32(0, write(out, root));
+        out.pad(8);
+        return out.toArray();
+    }
+
+    // the position offsets to node point at
+    private static int write(Bytes out, Node node){
+        if(node instanceof Table) return writeTable(out, (Table) node);
+        if(node instanceof Text){
+            byte[] utf8 = ((Text) node).utf8;
+            out.pad(4);
+            int position = out.size();
+            out.i32(utf8.length);
+            out.put(utf8, 0, utf8.length);
+            out.i8(0);
+            return position;
+        }
+        if(node instanceof Structs){
+            Structs structs = (Structs) node;
+            while(out.size() % 8 != 4) out.i8(0);
+            int position = out.size();
+            out.i32(structs.count);
+            out.put(structs.bytes.array(), 0, structs.bytes.size());
+            return position;
+        }
+        List<Table> elements = ((Tables) node).elements;
+        out.pad(4);
+        int position = out.size();
+        out.i32(elements.size());
+        int first = out.size();
+        for(int i = 0; i < elements.size(); i++) out.i32(0);
+        for(int i = 0; i < elements.size(); i++){
+            int at = first + 4 * i;
+            out.putI32(at, write(out, elements.get(i)) - at);
+        }
+        return position;
+    }
+
+    private static int writeTable(Bytes out, Table table){
+        List<Field> fields = new ArrayList<>(table.fields);
+        fields.sort((a, b) -> b.size - a.size);
+        int slots = 0;
+        int[] offsets = new int[fields.size()];
+        int inline = 4;
+        for(int i = 0; i < fields.size(); i++){
+            slots = Math.max(slots, fields.get(i).slot + 1);
+            offsets[i] = inline;
+            inline += fields.get(i).size;
+        }
+        int[] slotOffsets = new int[slots];
+        for(int i = 0; i < fields.size(); i++) slotOffsets[fields.get(i).slot] = offsets[i];
+
+        out.pad(2);
+        int vtable = out.size();
+        out.i16(4 + 2 * slots);
+        out.i16(inline);
+        for(int offset : slotOffsets) out.i16(offset);
+        while(out.size() % 8 != 4) out.i8(0);
+        int start = out.size();
+        out.i32(start - vtable);
+        for(Field field : fields){
+            switch(field.size){
+                case 1: out.i8((int) field.bits); break;
+                case 2: out.i16((int) field.bits); break;
+                case 4: out.i32((int) field.bits); break;
+                default: out.i64(field.bits);
+            }
+        }
+        for(int i = 0; i < fields.size(); i++){
+            if(fields.get(i).ref == null) continue;
+            int at = start + offsets[i];
+            out.putI32(at, write(out, fields.get(i).ref) - at);
+        }
+        return start;
+    }
+
+    // growable little-endian bytes
+    static final class Bytes {
+        private byte[] bytes = new byte[256];
+        private int size;
+
+        int size(){ return size; }
+        byte[] array(){ return bytes; }
+        byte[] toArray(){ return Arrays.copyOf(bytes, size); }
+        void clear(){ size = 0; }
+
+        void i8(int v){
+            ensure(1);
+            bytes[size++] = (byte) v;
+        }
+
+        void i16(int v){
+            ensure(2);
+            bytes[size++] = (byte) v;
+            bytes[size++] = (byte) (v >>> 8);
+        }
+
+        void i32(int v){
+            ensure(4);
+            putI32(size, v);
+            size += 4;
+        }
+
+        void i64(long v){
+            i32((int) v);
+            i32((int) (v >>> 32));
+        }
+
+        void f32(float v){ i32(Float.floatToRawIntBits(v)); }
+        void f64(double v){ i64(Double.doubleToRawLongBits(v)); }
+
+        void put(byte[] b, int off, int len){
+            ensure(len);
+            System.arraycopy(b, off, bytes, size, len);
+            size += len;
+        }
+
+        void putI32(int at, int v){
+            bytes[at] = (byte) v;
+            bytes[at + 1] = (byte) (v >>> 8);
+            bytes[at + 2] = (byte) (v >>> 16);
+            bytes[at + 3] = (byte) (v >>> 24);
+        }
+
+        // zeros up to a multiple of n
+        void pad(int n){
+            while(size % n != 0) i8(0);
+        }
+
+        private void ensure(int n){
+            if(size + n > bytes.length) bytes = Arrays.copyOf(bytes, Math.max(size + n, bytes.length * 2));
+        }
+    }
+}
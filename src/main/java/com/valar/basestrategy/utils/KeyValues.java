@@ -13,6 +13,8 @@ public class KeyValues {
     public float costPercent,hpCostPercent;
     public int sno, indexType, startTime, cutOffTime, endTime, candlePeriod;
     public int maxOverlap,tradeGap;
+    // the line's place among the keystore file's rows, 0 for the first
+    public int row;
 
     public String tradeType;
     private int iter;
@@ -26,6 +28,10 @@ public class KeyValues {
     private final int regimeWindow;
     private final double regimeVolThreshold;
     private final double regimeCorrThreshold;
+    public final boolean allPivotLevels;
+    public final int maxHoldingMinutes;
+    // the period suffixes of the EMA and RSI columns of OrderInfo
+    public final String emaTag, rsiTag;
 
     public KeyValues(String ln) {
         this.ln = ln;
@@ -51,6 +57,19 @@ public class KeyValues {
         regimeWindow = Integer.parseInt(splits[iter++]);
         regimeVolThreshold = Double.parseDouble(splits[iter++]);
         regimeCorrThreshold = Double.parseDouble(splits[iter++]);
+        // optional: classic (r1/r2, s1/s2) or all (classic, camarilla, fibonacci, prior day/week levels)
+        allPivotLevels = splits.length > iter && splits[iter++].trim().equalsIgnoreCase("all");
+        // optional: exit a trade once it has been open this many minutes, 0 = no limit
+        maxHoldingMinutes = splits.length > iter ? Integer.parseInt(splits[iter++].trim()) : 0;
+        emaTag = "(" + emaPeriod + ")";
+        rsiTag = "(" + rsiLong + "-" + rsiShort + ")";
+    }
+
+    // the columns that decide entries and exits: all but sno, costPercent and hpCostPercent
+    public String signalKey() {
+        String[] splits = ln.split(",", -1);
+        splits[0] = splits[3] = splits[4] = "";
+        return String.join(",", splits);
     }
 
     public static List<String> getTimeFrames(int timeFrame) {
@@ -1,44 +1,190 @@
 package com.valar.basestrategy.utils;
 
 import com.valar.basestrategy.application.ValarTrade;
+import com.valar.basestrategy.tradeAndDayMetrics.StopTargetSweep;
 
+import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static com.valar.basestrategy.application.PropertiesReader.properties;
+import static com.valar.basestrategy.utils.ArrowTable.Type.*;
 
 public class PrintWriters {
-    public static PrintWriter orderInfoPrintWriter,dayWisePrintWriter,overAllPrintWriter,stockOverAllPrintWriter;
+    public static PrintWriter orderInfoPrintWriter,dayWisePrintWriter,overAllPrintWriter,stockOverAllPrintWriter,sweepPrintWriter;
+    public static final String ORDER_INFO_HEADING =
+            "S.no,Symbol,Date,ID,Holding Period,TradeType,Event,EntryDate,EntryTime,EntryClose," +
+                    "EntryEMA,EntryRSI,EntryPivot,PDH,CDH,HHV,PDL,CDL,LLV," + // New Columns
+                    "Event,ExitDate,ExitTime,ExitClose," +
+                    "ExitEMA,ExitRSI,ExitPivot," + // New Columns
+                    "Reason,ReasonInfo,Profit,Profit%,tradeMaxProfit,ProfitWith(Cost),Profit%With(Cost)," +
+                    "DayAtrPercentile,DayAtrPercent,candlesWaited,IndexCloseAtExit,HoldingCost\n";
+    // the overAllDetails columns after the keystore's
+    public static final String OVER_ALL_METRICS = "TradingDays,TotalTrades,TradeMaxProfit,TradeMaxLoss" +
+            ",DayMaxProfit,DayMaxLoss,TradeAverageProfit,TradeAverageLoss,TradeWinPercent,TradeWinPercent(Cost),TradeExpectancy,TradeExpectancy(Cost),Profit,ProfitPercent" +
+            ",DayAverageProfit,DayAverageLoss,DayWinPercent,DayExpectancy,Profit(Cost),ProfitPercent(Cost),DayWinPercent(Cost)" +
+            ",DayAverageProfit(Cost),DayAverageLoss(Cost),DayExpectancy(Cost),HoldingPeriodAvg,Calmar,TotalHpCost,profitPerTrade(Cost)";
+    // Arrow copies of the tables (arrowOutput=true), else null; csvOutput=false leaves the csv files empty
+    public static ArrowTable orderInfoArrowTable,dayWiseArrowTable,overAllArrowTable,stockOverAllArrowTable;
+    public static boolean csvOutput = true;
+    private static final ThreadLocal<Buffer> boundBuffer = new ThreadLocal<>();
+
+    // rows of one unit of work, held back so work run in parallel can be written out in a fixed order
+    public static class Buffer {
+        private final StringWriter orderInfo = new StringWriter(),dayWise = new StringWriter(),
+                overAll = new StringWriter(),stockOverAll = new StringWriter(),sweep = new StringWriter();
+        private final PrintWriter orderInfoWriter = new PrintWriter(orderInfo),dayWiseWriter = new PrintWriter(dayWise),
+                overAllWriter = new PrintWriter(overAll),stockOverAllWriter = new PrintWriter(stockOverAll),
+                sweepWriter = new PrintWriter(sweep);
+        private final ArrowTable orderInfoRows = inMemory(orderInfoArrowTable),dayWiseRows = inMemory(dayWiseArrowTable),
+                overAllRows = inMemory(overAllArrowTable),stockOverAllRows = inMemory(stockOverAllArrowTable);
+
+        // appends the rows to whatever the calling thread writes to (the files, or an enclosing buffer)
+        public void writeToCurrent(){
+            orderInfo().write(orderInfo.toString());
+            dayWise().write(dayWise.toString());
+            overAll().write(overAll.toString());
+            stockOverAll().write(stockOverAll.toString());
+            if(sweep.getBuffer().length() > 0) sweep().write(sweep.toString());
+            if(orderInfoRows != null){
+                orderInfoRows.appendTo(orderInfoArrow());
+                dayWiseRows.appendTo(dayWiseArrow());
+                overAllRows.appendTo(overAllArrow());
+                stockOverAllRows.appendTo(stockOverAllArrow());
+            }
+        }
+
+        private static ArrowTable inMemory(ArrowTable table){
+            return table==null?null:table.inMemory();
+        }
+    }
+
+    // routes this thread's rows into buffer (null for the files), returns the previous binding to restore
+    public static Buffer bind(Buffer buffer){
+        Buffer previous = boundBuffer.get();
+        boundBuffer.set(buffer);
+        return previous;
+    }
+
+    public static PrintWriter orderInfo(){
+        Buffer buffer = boundBuffer.get();
+        return buffer==null?orderInfoPrintWriter:buffer.orderInfoWriter;
+    }
+
+    public static PrintWriter dayWise(){
+        Buffer buffer = boundBuffer.get();
+        return buffer==null?dayWisePrintWriter:buffer.dayWiseWriter;
+    }
+
+    public static PrintWriter overAll(){
+        Buffer buffer = boundBuffer.get();
+        return buffer==null?overAllPrintWriter:buffer.overAllWriter;
+    }
+
+    public static PrintWriter stockOverAll(){
+        Buffer buffer = boundBuffer.get();
+        return buffer==null?stockOverAllPrintWriter:buffer.stockOverAllWriter;
+    }
+
+    // rows of the stop/target sweep, only opened when one is configured
+    public static PrintWriter sweep(){
+        Buffer buffer = boundBuffer.get();
+        return buffer==null?sweepPrintWriter:buffer.sweepWriter;
+    }
+
+    public static ArrowTable orderInfoArrow(){
+        Buffer buffer = boundBuffer.get();
+        return buffer==null?orderInfoArrowTable:buffer.orderInfoRows;
+    }
+
+    public static ArrowTable dayWiseArrow(){
+        Buffer buffer = boundBuffer.get();
+        return buffer==null?dayWiseArrowTable:buffer.dayWiseRows;
+    }
+
+    public static ArrowTable overAllArrow(){
+        Buffer buffer = boundBuffer.get();
+        return buffer==null?overAllArrowTable:buffer.overAllRows;
+    }
+
+    public static ArrowTable stockOverAllArrow(){
+        Buffer buffer = boundBuffer.get();
+        return buffer==null?stockOverAllArrowTable:buffer.stockOverAllRows;
+    }
+
+    // a csv table, discarding its rows when csvOutput=false
+    private static PrintWriter open(String path) throws IOException {
+        return csvOutput?file(path):new PrintWriter(Writer.nullWriter());
+    }
+
+    // the output files go through the background writer (AsyncFileWriter) unless asyncOutput=false
+    private static PrintWriter file(String path) throws IOException {
+        return Boolean.parseBoolean(properties.getProperty("asyncOutput","true"))
+                ? new PrintWriter(new AsyncFileWriter(path)) : new PrintWriter(path);
+    }
 
     public static void loadAllWriters()throws Exception{
+        csvOutput = Boolean.parseBoolean(properties.getProperty("csvOutput","true"));
         //without rsi,ema
         /*orderInfoPrintWriter = new PrintWriter("./Outputs/OrderInfo[overAll].csv");
         orderInfoPrintWriter.write("S.no,Symbol,Date,ID,Holding Period,TradeType,Event,EntryDate,EntryTime,EntryClose,Event,ExitDate,ExitTime,ExitClose,Reason,ReasonInfo,Profit,Profit%,tradeMaxProfit,ProfitWith(Cost),Profit%With(Cost),DayAtrPercentile,DayAtrPercent,candlesWaited,IndexCloseAtExit,HoldingCost" +
                 "\n");*/
 
         //with ema,rsi,pivot
-        orderInfoPrintWriter = new PrintWriter("./Outputs/OrderInfo[overAll].csv");
-        orderInfoPrintWriter.write(
-                "S.no,Symbol,Date,ID,Holding Period,TradeType,Event,EntryDate,EntryTime,EntryClose," +
-                        "EntryEMA,EntryRSI,EntryPivot,PDH,CDH,HHV,PDL,CDL,LLV," + // New Columns
-                        "Event,ExitDate,ExitTime,ExitClose," +
-                        "ExitEMA,ExitRSI,ExitPivot," + // New Columns
-                        "Reason,ReasonInfo,Profit,Profit%,tradeMaxProfit,ProfitWith(Cost),Profit%With(Cost)," +
-                        "DayAtrPercentile,DayAtrPercent,candlesWaited,IndexCloseAtExit,HoldingCost\n"
-        );
-
-        dayWisePrintWriter = new PrintWriter("./Outputs/DayWise[overAll].csv");
+        orderInfoPrintWriter = open("./Outputs/OrderInfo[overAll].csv");
+        orderInfoPrintWriter.write(ORDER_INFO_HEADING);
+        if(StopTargetSweep.enabled()){
+            sweepPrintWriter = file("./Outputs/OrderInfo[sweep].csv");
+            sweepPrintWriter.write("Variant," + ORDER_INFO_HEADING);
+        }
+
+        dayWisePrintWriter = open("./Outputs/DayWise[overAll].csv");
         dayWisePrintWriter.write("sno,date,TotalTrades,profit,profit%,ProfitWithcost,Profit%WithCost\n");
 
 //        dayWisePrintWriter.write(ValarTrade.keystoreHeading +",date,TotalTrades,maxProfit,maxLoss,maxProfitPercent,maxLossPercent,DayMaxProfit,DayMaxProfit%,win%,profit,profit%,cost,avgProfit,avgLoss,avgProfit%,avgLoss%,TradeExpectancy\n");
 
-        String overallHeading = ValarTrade.keystoreHeading+",TradingDays,TotalTrades,TradeMaxProfit,TradeMaxLoss" +
-                ",DayMaxProfit,DayMaxLoss,TradeAverageProfit,TradeAverageLoss,TradeWinPercent,TradeWinPercent(Cost),TradeExpectancy,TradeExpectancy(Cost),Profit,ProfitPercent" +
-                ",DayAverageProfit,DayAverageLoss,DayWinPercent,DayExpectancy,Profit(Cost),ProfitPercent(Cost),DayWinPercent(Cost)" +
-                ",DayAverageProfit(Cost),DayAverageLoss(Cost),DayExpectancy(Cost),HoldingPeriodAvg,Calmar,TotalHpCost,profitPerTrade(Cost)\n";
-        overAllPrintWriter = new PrintWriter("./Outputs/overAllDetails[serialWise].csv");
+        String overallHeading = ValarTrade.keystoreHeading+","+OVER_ALL_METRICS+"\n";
+        overAllPrintWriter = open("./Outputs/overAllDetails[serialWise].csv");
         overAllPrintWriter.write(overallHeading);
 
 
-        stockOverAllPrintWriter = new PrintWriter("./Outputs/OverAllDetails[Stockwise].csv");
+        stockOverAllPrintWriter = open("./Outputs/OverAllDetails[Stockwise].csv");
         stockOverAllPrintWriter.write("Stock,"+overallHeading);
+
+        if(Boolean.parseBoolean(properties.getProperty("arrowOutput","false"))){
+            orderInfoArrowTable = new ArrowTable("./Outputs/OrderInfo[overAll].arrow",ORDER_INFO_COLUMNS);
+            dayWiseArrowTable = new ArrowTable("./Outputs/DayWise[overAll].arrow",
+                    "sno",INT32,"date",DATE,"TotalTrades",INT32,"profit",FLOAT32,"profit%",FLOAT32,
+                    "ProfitWithcost",FLOAT32,"Profit%WithCost",FLOAT32);
+            overAllArrowTable = new ArrowTable("./Outputs/overAllDetails[serialWise].arrow",overAllColumns(false));
+            stockOverAllArrowTable = new ArrowTable("./Outputs/OverAllDetails[Stockwise].arrow",overAllColumns(true));
+        }
+    }
+
+    // OrderInfo as typed columns: entry/exit as bar timestamps, without the constant candlesWaited and the
+    // IndexCloseAtExit copy of ExitClose
+    private static final Object[] ORDER_INFO_COLUMNS = {
+            "S.no",INT32,"ID",INT32,"Holding Period",FLOAT32,"TradeType",TEXT,
+            "Entry",TIMESTAMP,"EntryClose",FLOAT32,"EntryEMA",FLOAT64,"EntryRSI",FLOAT64,"EntryPivot",FLOAT64,
+            "PDH",FLOAT32,"CDH",FLOAT32,"HHV",FLOAT64,"PDL",FLOAT32,"CDL",FLOAT32,"LLV",FLOAT64,
+            "Exit",TIMESTAMP,"ExitClose",FLOAT32,"ExitEMA",FLOAT64,"ExitRSI",FLOAT64,"ExitPivot",FLOAT64,
+            "Reason",TEXT,"ReasonInfo",TEXT,"Profit",FLOAT32,"Profit%",FLOAT32,"tradeMaxProfit",FLOAT32,
+            "ProfitWith(Cost)",FLOAT32,"Profit%With(Cost)",FLOAT32,"DayAtrPercentile",FLOAT64,"DayAtrPercent",FLOAT64,
+            "HoldingCost",FLOAT64};
+
+    // the keystore row as one text column, then the metrics: two counts, TotalHpCost a double, the rest floats
+    private static Object[] overAllColumns(boolean stockWise){
+        List<Object> columns = new ArrayList<>();
+        if(stockWise) Collections.addAll(columns,"Stock",TEXT);
+        Collections.addAll(columns,"Keystore",TEXT);
+        String[] metrics = OVER_ALL_METRICS.split(",");
+        for(int i = 0;i < metrics.length;i++)
+            Collections.addAll(columns,metrics[i],i < 2?INT32:metrics[i].equals("TotalHpCost")?FLOAT64:FLOAT32);
+        return columns.toArray();
     }
 
     public static void closeAllWriters(){
@@ -46,5 +192,12 @@ public class PrintWriters {
         dayWisePrintWriter.close();
         overAllPrintWriter.close();
         stockOverAllPrintWriter.close();
+        if(sweepPrintWriter!=null) sweepPrintWriter.close();
+        if(orderInfoArrowTable!=null){
+            orderInfoArrowTable.close();
+            dayWiseArrowTable.close();
+            overAllArrowTable.close();
+            stockOverAllArrowTable.close();
+        }
     }
 }
@@ -3,9 +3,15 @@ package com.valar.basestrategy.utils;
 import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
+import java.time.LocalDate;
+
+import static com.valar.basestrategy.application.PropertiesReader.properties;
+import static com.valar.basestrategy.utils.ArrowTable.Type.*;
 
 public class RegimeWriter implements Closeable {
     private final BufferedWriter w;
+    // RegimeByDay.arrow next to the csv when arrowOutput=true
+    private final ArrowTable table;
 
     public RegimeWriter(String file) throws IOException {
         Path path = Paths.get(file);
@@ -14,7 +20,10 @@ public class RegimeWriter implements Closeable {
                 StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
         w.write("date,regime_code,regime_name,C,T,V,R");
         w.newLine();
-        w.flush();
+        table = Boolean.parseBoolean(properties.getProperty("arrowOutput","false"))
+                ? new ArrowTable(file.replaceAll("\\.csv$","") + ".arrow",
+                        "date",DATE,"regime_code",INT32,"regime_name",TEXT,"C",INT32,"T",INT32,"V",INT32,"R",INT32)
+                : null;
     }
 
     //date,code,label,C,T,V,R
@@ -28,12 +37,16 @@ public class RegimeWriter implements Closeable {
         w.write(Integer.toString(V)); w.write(",");
         w.write(Integer.toString(R));
         w.newLine();
-        w.flush();
+        if(table != null) table.day(LocalDate.parse(date).toEpochDay()).i32(code).text(label).i32(C).i32(T).i32(V).i32(R).endRow();
     }
 
     public synchronized void append(String date, int code, String label) throws IOException {
         append(date, code, label, -1, -1, -1, code);
     }
 
-    @Override public void close() throws IOException { w.flush(); w.close(); }
+    @Override public void close() throws IOException {
+        w.flush();
+        w.close();
+        if(table != null) table.close();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,130 @@
+package com.valar.basestrategy.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Hierarchical timer wheel over epoch minutes: level k has 64 slots of 64^k minutes each. A deadline is
+ * filed once at the coarsest level where it differs from the current time and moves down a level each time
+ * the wheel enters its slot, so advancing only touches slots that are due. Overnight and weekend gaps are
+ * crossed a level-0 block (64 minutes) at a time, or in one step while the wheel is empty.
+ */
+public class TimerWheel<T> {
+    private static final int BITS = 6, SLOTS = 1 << BITS, LEVELS = 5;
+
+    private final List<List<Entry<T>>> slots = new ArrayList<>(LEVELS * SLOTS);
+    private final long[] occupied = new long[LEVELS];
+    private final List<Entry<T>> overdue = new ArrayList<>();
+    private long now = Long.MIN_VALUE;
+    private int size;
+
+    public static class Entry<T> {
+        public final long deadline;
+        public final T item;
+        public final int reason;
+
+        Entry(long deadline, T item, int reason){
+            this.deadline = deadline;
+            this.item = item;
+            this.reason = reason;
+        }
+    }
+
+    public TimerWheel(){
+        for(int i = 0; i < LEVELS * SLOTS; i++) slots.add(new ArrayList<>());
+    }
+
+    public int size(){
+        return size;
+    }
+
+    // drops every entry and forgets the time, as if just constructed
+    public void clear(){
+        for(int level = 0; level < LEVELS; level++)
+            for(long bits = occupied[level]; bits != 0; bits &= bits - 1)
+                slots.get(level * SLOTS + Long.numberOfTrailingZeros(bits)).clear();
+        Arrays.fill(occupied, 0);
+        overdue.clear();
+        now = Long.MIN_VALUE;
+        size = 0;
+    }
+
+    // deadlines at or before the current time fire on the next advance
+    public void schedule(long deadline, T item, int reason){
+        size++;
+        place(new Entry<>(deadline, item, reason));
+    }
+
+    // moves the wheel to time and adds every entry with deadline <= time to due, in deadline order per slot
+    public void advance(long time, List<Entry<T>> due){
+        if(now == Long.MIN_VALUE){
+            // scheduled before the first advance: only now is it known which of them are already due
+            now = time;
+            List<Entry<T>> early = new ArrayList<>(overdue);
+            overdue.clear();
+            for(Entry<T> entry : early) place(entry);
+        }
+        if(!overdue.isEmpty()){
+            due.addAll(overdue);
+            size -= overdue.size();
+            overdue.clear();
+        }
+        while(now < time){
+            if(size == 0){
+                now = time;
+                break;
+            }
+            // next occupied level-0 slot of the current block, else the start of the next block
+            int from = (int) (now & (SLOTS - 1)) + 1;
+            long ahead = from == SLOTS ? 0 : occupied[0] & (-1L << from);
+            long next = ahead != 0 ? (now & -SLOTS) + Long.numberOfTrailingZeros(ahead) : (now | (SLOTS - 1)) + 1;
+            if(next > time){
+                now = time;
+                break;
+            }
+            now = next;
+            if((now & (SLOTS - 1)) == 0) cascade(1);
+            fire((int) (now & (SLOTS - 1)), due);
+        }
+    }
+
+    private void place(Entry<T> entry){
+        if(now == Long.MIN_VALUE || entry.deadline <= now){
+            overdue.add(entry);
+            return;
+        }
+        int level = (63 - Long.numberOfLeadingZeros(entry.deadline ^ now)) / BITS;
+        if(level >= LEVELS) level = LEVELS - 1; // further out than the wheel spans, re-filed when reached
+        int slot = (int) ((entry.deadline >>> (BITS * level)) & (SLOTS - 1));
+        slots.get(level * SLOTS + slot).add(entry);
+        occupied[level] |= 1L << slot;
+    }
+
+    // the wheel just entered a new slot of level (and of the levels above when it wrapped): refile its entries lower
+    private void cascade(int level){
+        if(level >= LEVELS) return;
+        int slot = (int) ((now >>> (BITS * level)) & (SLOTS - 1));
+        if(slot == 0) cascade(level + 1);
+        if((occupied[level] & (1L << slot)) == 0) return;
+        List<Entry<T>> entries = slots.get(level * SLOTS + slot);
+        List<Entry<T>> moved = new ArrayList<>(entries);
+        entries.clear();
+        occupied[level] &= ~(1L << slot);
+        for(Entry<T> entry : moved) place(entry);
+    }
+
+    private void fire(int slot, List<Entry<T>> due){
+        if(!overdue.isEmpty()){
+            due.addAll(overdue);
+            size -= overdue.size();
+            overdue.clear();
+        }
+        if((occupied[0] & (1L << slot)) == 0) return;
+        List<Entry<T>> entries = slots.get(slot);
+        due.addAll(entries);
+        size -= entries.size();
+        entries.clear();
+        occupied[0] &= ~(1L << slot);
+    }
+}
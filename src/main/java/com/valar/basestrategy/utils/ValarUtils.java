@@ -37,6 +37,13 @@ public class ValarUtils {
         return (hr * 60) + min;
     }
 
+    // dd-MM-yy -> yyMMdd, comparable without parsing
+    public static int getDateKey(String date){
+        return ((date.charAt(6)-'0')*10 + (date.charAt(7)-'0'))*10000
+                + ((date.charAt(3)-'0')*10 + (date.charAt(4)-'0'))*100
+                + (date.charAt(0)-'0')*10 + (date.charAt(1)-'0');
+    }
+
     public static List<String> getAllFilesOfFolder(String path) {
 
         File file = new File(path);
@@ -0,0 +1,34 @@
+package com.valar.basestrategy.utils;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+
+import static com.valar.basestrategy.application.PropertiesReader.properties;
+
+/**
+ * The one ForkJoinPool that parallel keystore batches, instruments and the portfolio covariance run on, so nested
+ * levels share its threads rather than each starting a pool. It has the larger of the processor count and the
+ * parallelism settings; each level bounds its own tasks with a window.
+ */
+public class Workers {
+    private static final ForkJoinPool pool = new ForkJoinPool(Math.max(Runtime.getRuntime().availableProcessors(),
+            Math.max(Integer.parseInt(properties.getProperty("parallelism","1")),
+                    Math.max(Integer.parseInt(properties.getProperty("instrumentParallelism","1")),
+                            Integer.parseInt(properties.getProperty("portfolioParallelism","1"))))));
+
+    // runs tasks with at most window of them started and not yet consumed; results go to consumer in task order,
+    // each as soon as it and the ones before it are done
+    public static <T> void inOrder(List<Callable<T>> tasks, int window, Consumer<T> consumer){
+        Deque<ForkJoinTask<T>> running = new ArrayDeque<>();
+        int next = 0;
+        while(next < tasks.size() || !running.isEmpty()){
+            while(next < tasks.size() && running.size() < Math.max(1, window)) running.add(pool.submit(tasks.get(next++)));
+            consumer.accept(running.poll().join());
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.valar.basestrategy.entities.indicators;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IntrabarIndexTest {
+    // one 5-min bar, 100 to 110 and back, then a second that gaps down to 90 on its first minute
+    private static final List<String> FIVE_MIN = List.of(
+            "02-01-23 09:15,100,110,96,104,0",
+            "02-01-23 09:20,92,95,89,94,0");
+    private static final List<String> ONE_MIN = List.of(
+            "02-01-23 09:15,100,102,99,101,0",
+            "02-01-23 09:16,101,106,100,105,0",
+            "02-01-23 09:17,105,110,104,108,0",
+            "02-01-23 09:18,108,108,96,97,0",
+            "02-01-23 09:19,97,104,97,104,0",
+            "02-01-23 09:20,92,95,90,94,0",
+            "02-01-23 09:21,94,94,89,93,0",
+            "02-01-23 09:22,93,95,92,94,0",
+            "02-01-23 09:23,94,95,93,94,0",
+            "02-01-23 09:24,94,95,93,94,0");
+
+    private final IntrabarIndex index = new IntrabarIndex(FIVE_MIN, ONE_MIN);
+
+    @Test
+    void targetReachedBeforeStopWithinTheBar(){
+        // long, stop 97 and target 109 both inside 96-110: the target's minute (09:17) comes first
+        assertFalse(index.stopFirst(0, 'l', 97, 109));
+        // short, stop 109 and target 97: the stop's minute comes first
+        assertTrue(index.stopFirst(0, 's', 109, 97));
+    }
+
+    @Test
+    void fillsAtTheLevelTheMinutesReached(){
+        assertEquals(109f, index.fillPrice(0, false, 109));
+        assertEquals(97f, index.fillPrice(0, true, 97));
+    }
+
+    @Test
+    void fillsAtTheOpenWhenTheMinuteOpenedBeyondTheLevel(){
+        // long stop at 93: the 09:20 minute opened at 92, below it
+        assertEquals(92f, index.fillPrice(1, true, 93));
+        // 89.5 is only reached by the 09:21 minute, which opened above it
+        assertEquals(89.5f, index.fillPrice(1, true, 89.5));
+        // long target at 91 is already exceeded by the first minute's open of 92
+        assertEquals(92f, index.fillPrice(1, false, 91));
+    }
+
+    @Test
+    void noFillWhenNoMinuteReachesTheLevel(){
+        assertTrue(Float.isNaN(index.fillPrice(0, false, 111)));
+        assertTrue(Float.isNaN(index.fillPrice(1, true, 88)));
+    }
+}
@@ -0,0 +1,134 @@
+package com.valar.basestrategy.service;
+
+import com.valar.basestrategy.tradeAndDayMetrics.TradeMetric;
+import com.valar.basestrategy.utils.KeyValues;
+import com.valar.basestrategy.utils.PrintWriters;
+import org.junit.jupiter.api.Test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class StrategyTest {
+    private static final String KEYSTORE = "1,0,l,0.05,0.01,09:15,15:10,15:29,true,1,20,14,true,500,0,60,40,false,10,0.012,0.50";
+    // two instruments of one symbol, with a day of their own each and days in common
+    private static final String FIRST = "ABC 1min", SECOND = "ABC 5min";
+    private static final String[] FIRST_DAYS = {"02-01-24", "03-01-24", "03-01-24", "05-01-24"},
+            SECOND_DAYS = {"02-01-24", "04-01-24", "05-01-24", "05-01-24"};
+
+    private static Strategy strategy(){
+        Strategy strategy = new Strategy(List.of(new KeyValues(KEYSTORE)));
+        Strategy.OverAllMetricInfo info = strategy.overAllMetricInfoMap.get(1);
+        info.addStockDayMetricMap(FIRST);
+        info.addStockDayMetricMap(SECOND);
+        return strategy;
+    }
+
+    private static void exits(Strategy.DayMetricsMaps maps, String[] days, float base){
+        for(int i = 0; i < days.length; i++){
+            TradeMetric trade = new TradeMetric();
+            float profit = base + (i % 2 == 0 ? i : -2 * i);
+            trade.profit.add(profit);
+            trade.profitPercent.add(profit / 100);
+            trade.profitWithCost.add(profit - 0.5f);
+            trade.profitPercentWithCost.add((profit - 0.5f) / 100);
+            trade.totalHoldingPeriod = i + 1;
+            maps.dayMetricsMaps.get(1).addExit(days[i], 0.05f, 0, 1, trade, profit, profit / 100);
+            maps.stockDayMetricsMaps.get(1).addExit(days[i], 0.05f, 0, 1, trade, profit, profit / 100);
+        }
+    }
+
+    // the DayWise, overAll and stockOverAll rows in buffer
+    private static String[] rows(PrintWriters.Buffer buffer){
+        StringWriter orderInfo = new StringWriter(), dayWise = new StringWriter(), overAll = new StringWriter(),
+                stockOverAll = new StringWriter();
+        PrintWriter[] files = {PrintWriters.orderInfoPrintWriter, PrintWriters.dayWisePrintWriter,
+                PrintWriters.overAllPrintWriter, PrintWriters.stockOverAllPrintWriter};
+        PrintWriters.orderInfoPrintWriter = new PrintWriter(orderInfo);
+        PrintWriters.dayWisePrintWriter = new PrintWriter(dayWise);
+        PrintWriters.overAllPrintWriter = new PrintWriter(overAll);
+        PrintWriters.stockOverAllPrintWriter = new PrintWriter(stockOverAll);
+        PrintWriters.Buffer previous = PrintWriters.bind(null);
+        try {
+            buffer.writeToCurrent();
+            PrintWriters.dayWisePrintWriter.flush();
+            PrintWriters.overAllPrintWriter.flush();
+            PrintWriters.stockOverAllPrintWriter.flush();
+        } finally {
+            PrintWriters.bind(previous);
+            PrintWriters.orderInfoPrintWriter = files[0];
+            PrintWriters.dayWisePrintWriter = files[1];
+            PrintWriters.overAllPrintWriter = files[2];
+            PrintWriters.stockOverAllPrintWriter = files[3];
+        }
+        return new String[]{dayWise.toString(), overAll.toString(), stockOverAll.toString()};
+    }
+
+    @Test
+    void sharedSymbolKeepsOneSlot(){
+        Strategy.OverAllMetricInfo info = strategy().overAllMetricInfoMap.get(1);
+        assertEquals(Map.of("ABC", info.stockDaySlots.get("ABC")), info.stockDaySlots);
+        assertEquals(1, info.stockOverAllMetric.size());
+    }
+
+    @Test
+    void sharedSymbolRunConcurrentlyMatchesSequential() throws Exception {
+        PrintWriters.Buffer expected = new PrintWriters.Buffer(), actual = new PrintWriters.Buffer();
+        PrintWriters.Buffer previous = PrintWriters.bind(expected);
+        try {
+            Strategy sequential = strategy();
+            exits(sequential.new DayMetricsMaps(FIRST), FIRST_DAYS, 3);
+            sequential.lastInstrumentRuns();
+            exits(sequential.new DayMetricsMaps(SECOND), SECOND_DAYS, 7);
+            sequential.calculateOverAll();
+        } finally {
+            PrintWriters.bind(previous);
+        }
+
+        Strategy concurrent = strategy();
+        List<Future<Strategy.DayMetricsMaps>> instruments = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            String[][] days = {FIRST_DAYS, SECOND_DAYS};
+            String[] files = {FIRST, SECOND};
+            for(int k = 0; k < 2; k++){
+                int instrument = k;
+                instruments.add(executor.submit(() -> {
+                    Strategy.DayMetricsMaps maps = concurrent.new DayMetricsMaps(files[instrument]);
+                    maps.logSharedExits();
+                    start.await();
+                    exits(maps, days[instrument], instrument == 0 ? 3 : 7);
+                    return maps;
+                }));
+            }
+            start.countDown();
+            previous = PrintWriters.bind(actual);
+            try {
+                instruments.get(0).get().replay();
+                concurrent.lastInstrumentRuns();
+                instruments.get(1).get().replay();
+                concurrent.calculateOverAll();
+            } finally {
+                PrintWriters.bind(previous);
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        String[] rows = rows(actual);
+        assertArrayEquals(rows(expected), rows);
+        // the four days, and one row for the symbol
+        assertEquals(4, rows[0].lines().count());
+        assertEquals(1, rows[2].lines().count());
+    }
+}
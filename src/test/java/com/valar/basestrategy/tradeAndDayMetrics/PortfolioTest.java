@@ -0,0 +1,89 @@
+package com.valar.basestrategy.tradeAndDayMetrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PortfolioTest {
+    private static final double EPS = 1e-9;
+
+    private static double[] means(double[][] returns){
+        return Arrays.stream(returns).mapToDouble(r -> Arrays.stream(r).sum() / r.length).toArray();
+    }
+
+    @Test
+    void covarianceOfSmallCase(){
+        // deviations [-1,1,-1,1], [-2,-2,2,2] and [-2,0,0,2] around a mean of 1e8: sum(xy) - T mean^2 loses them
+        double m = 1e8;
+        double[][] returns = {
+                {m - 1, m + 1, m - 1, m + 1},
+                {m - 2, m - 2, m + 2, m + 2},
+                {m - 2, m, m, m + 2}};
+        double[][] c = Portfolio.covariance(returns, means(returns));
+        double[][] expected = {
+                {4.0 / 3, 0, 4.0 / 3},
+                {0, 16.0 / 3, 8.0 / 3},
+                {4.0 / 3, 8.0 / 3, 8.0 / 3}};
+        for(int i = 0; i < 3; i++) assertArrayEquals(expected[i], c[i], EPS);
+    }
+
+    @Test
+    void tilesAcrossBlocksMatchTwoPass(){
+        // more keystores and days than one BLOCK, so off-diagonal tiles and several day strips
+        int n = 150, days = 200;
+        Random random = new Random(7);
+        double[][] returns = new double[n][days];
+        for(double[] row : returns)
+            for(int d = 0; d < days; d++) row[d] = random.nextGaussian() + 3;
+        double[] mean = means(returns);
+        double[][] expected = new double[n][n];
+        for(int i = 0; i < n; i++)
+            for(int j = 0; j < n; j++){
+                double s = 0;
+                for(int d = 0; d < days; d++) s += (returns[i][d] - mean[i]) * (returns[j][d] - mean[j]);
+                expected[i][j] = s / (days - 1);
+            }
+        double[][] c = Portfolio.covariance(returns, mean);
+        for(int i = 0; i < n; i++) assertArrayEquals(expected[i], c[i], EPS);
+    }
+
+    @Test
+    void riskParityOfTwoIsInverseVolatility(){
+        // for two keystores equal risk contributions means w ~ 1/sigma whatever the correlation: 1/1 and 1/2
+        double[] w = Portfolio.riskParity(new double[][]{{1, 0.6}, {0.6, 4}});
+        assertArrayEquals(new double[]{2.0 / 3, 1.0 / 3}, w, EPS);
+        // both contribute w_i (Cw)_i = 26/45
+        assertEquals(w[0] * (w[0] + 0.6 * w[1]), w[1] * (0.6 * w[0] + 4 * w[1]), EPS);
+    }
+
+    @Test
+    void riskParityOfUncorrelated(){
+        double[] w = Portfolio.riskParity(new double[][]{{1, 0, 0}, {0, 4, 0}, {0, 0, 9}});
+        assertArrayEquals(new double[]{6.0 / 11, 3.0 / 11, 2.0 / 11}, w, EPS);
+    }
+
+    @Test
+    void meanVarianceOfTwoTakesTheInteriorOptimum(){
+        // w1 = (mu1 - mu2 + c22 - c12) / (c11 + c22 - 2 c12) = 3 / 3.8 at the default risk aversion of 1
+        double[] w = Portfolio.meanVariance(new double[][]{{1, 0.6}, {0.6, 4}}, new double[]{0.1, 0.5});
+        assertArrayEquals(new double[]{15.0 / 19, 4.0 / 19}, w, EPS);
+    }
+
+    @Test
+    void meanVarianceStopsAtTheLongOnlyBound(){
+        // the interior optimum would short the first keystore, so it is dropped
+        double[] w = Portfolio.meanVariance(new double[][]{{1, 0.6}, {0.6, 4}}, new double[]{0, 10});
+        assertArrayEquals(new double[]{0, 1}, w, EPS);
+    }
+
+    @Test
+    void meanVarianceOfThreeUncorrelated(){
+        // w_i = mu_i - v with sum(w) = 1: v = -2/15
+        double[] w = Portfolio.meanVariance(new double[][]{{1, 0, 0}, {0, 1, 0}, {0, 0, 1}}, new double[]{0.3, 0.2, 0.1});
+        assertArrayEquals(new double[]{13.0 / 30, 10.0 / 30, 7.0 / 30}, w, EPS);
+    }
+}
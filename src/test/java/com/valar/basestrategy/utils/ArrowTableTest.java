@@ -0,0 +1,159 @@
+package com.valar.basestrategy.utils;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.DateDayVector;
+import org.apache.arrow.vector.Float4Vector;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.TimeStampSecVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.dictionary.Dictionary;
+import org.apache.arrow.vector.ipc.ArrowFileReader;
+import org.apache.arrow.vector.ipc.message.ArrowBlock;
+import org.apache.arrow.vector.types.DateUnit;
+import org.apache.arrow.vector.types.FloatingPointPrecision;
+import org.apache.arrow.vector.types.TimeUnit;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.Schema;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.FileInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static com.valar.basestrategy.utils.ArrowTable.Type.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+// files written by ArrowTable/ArrowFile read back with Arrow's own Java reader
+class ArrowTableTest {
+    private static final Object[] SCHEMA = {"sno", INT32, "symbol", TEXT, "date", DATE, "entry", TIMESTAMP,
+            "profit", FLOAT32, "cost", FLOAT64};
+
+    @TempDir
+    Path dir;
+
+    // what the reader gave back, one list per column, text decoded through its dictionary
+    private static class Read {
+        Schema schema;
+        int batches;
+        List<Integer> sno = new ArrayList<>(), date = new ArrayList<>();
+        List<String> symbol = new ArrayList<>();
+        List<Long> entry = new ArrayList<>();
+        List<Float> profit = new ArrayList<>();
+        List<Double> cost = new ArrayList<>();
+    }
+
+    private static Read read(Path path) throws Exception {
+        Read read = new Read();
+        try(BufferAllocator allocator = new RootAllocator();
+            FileInputStream in = new FileInputStream(path.toFile());
+            ArrowFileReader reader = new ArrowFileReader(in.getChannel(), allocator)){
+            VectorSchemaRoot root = reader.getVectorSchemaRoot();
+            read.schema = root.getSchema();
+            for(ArrowBlock block : reader.getRecordBlocks()){
+                reader.loadRecordBatch(block);
+                read.batches++;
+                long id = read.schema.findField("symbol").getDictionary().getId();
+                Dictionary dictionary = reader.getDictionaryVectors().get(id);
+                VarCharVector symbols = (VarCharVector) dictionary.getVector();
+                for(int r = 0; r < root.getRowCount(); r++){
+                    read.sno.add(((IntVector) root.getVector("sno")).get(r));
+                    read.symbol.add(new String(symbols.get(((IntVector) root.getVector("symbol")).get(r)), StandardCharsets.UTF_8));
+                    read.date.add(((DateDayVector) root.getVector("date")).get(r));
+                    read.entry.add(((TimeStampSecVector) root.getVector("entry")).get(r));
+                    read.profit.add(((Float4Vector) root.getVector("profit")).get(r));
+                    read.cost.add(((Float8Vector) root.getVector("cost")).get(r));
+                }
+            }
+        }
+        return read;
+    }
+
+    private static long seconds(int year, int month, int day, int hour, int minute){
+        return LocalDateTime.of(year, month, day, hour, minute).toEpochSecond(ZoneOffset.UTC);
+    }
+
+    @Test
+    void typedColumnsReadBack() throws Exception {
+        Path path = dir.resolve("t.arrow");
+        ArrowTable table = new ArrowTable(path.toString(), SCHEMA);
+        table.i32(7).text("BankNifty").date("02-01-23").time("02-01-23 09:15").f32(1.5f).f64(0.25).endRow();
+        table.i32(8).text("ABC").date("29-02-24").time("29-02-24 15:29").f32(-2.75f).f64(-1e-9).endRow();
+        table.i32(9).text("BankNifty").date("31-12-24").time("31-12-24").f32(0).f64(123456.789).endRow();
+        table.close();
+
+        Read read = read(path);
+        List<Field> fields = read.schema.getFields();
+        assertEquals(List.of("sno", "symbol", "date", "entry", "profit", "cost"),
+                fields.stream().map(Field::getName).collect(Collectors.toList()));
+        assertEquals(new ArrowType.Int(32, true), fields.get(0).getType());
+        assertNull(fields.get(0).getDictionary());
+        // dictionary-encoded text: int32 indices, the values utf8
+        assertEquals(new ArrowType.Int(32, true), fields.get(1).getType());
+        assertNotNull(fields.get(1).getDictionary());
+        assertEquals(new ArrowType.Date(DateUnit.DAY), fields.get(2).getType());
+        assertEquals(new ArrowType.Timestamp(TimeUnit.SECOND, null), fields.get(3).getType());
+        assertEquals(new ArrowType.FloatingPoint(FloatingPointPrecision.SINGLE), fields.get(4).getType());
+        assertEquals(new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE), fields.get(5).getType());
+
+        assertEquals(1, read.batches);
+        assertEquals(List.of(7, 8, 9), read.sno);
+        assertEquals(List.of("BankNifty", "ABC", "BankNifty"), read.symbol);
+        assertEquals(List.of((int) LocalDate.of(2023, 1, 2).toEpochDay(), (int) LocalDate.of(2024, 2, 29).toEpochDay(),
+                (int) LocalDate.of(2024, 12, 31).toEpochDay()), read.date);
+        assertEquals(List.of(seconds(2023, 1, 2, 9, 15), seconds(2024, 2, 29, 15, 29), seconds(2024, 12, 31, 0, 0)), read.entry);
+        assertEquals(List.of(1.5f, -2.75f, 0f), read.profit);
+        assertEquals(List.of(0.25, -1e-9, 123456.789), read.cost);
+    }
+
+    @Test
+    void batchesShareTheDictionaryWrittenAtClose() throws Exception {
+        // more rows than one batch (arrowBatchRows, 65536 by default); a new symbol every 1000 rows, so later
+        // batches use values the dictionary did not have when earlier ones were written
+        int rows = 70_000;
+        Path path = dir.resolve("batches.arrow");
+        ArrowTable table = new ArrowTable(path.toString(), SCHEMA);
+        for(int r = 0; r < rows; r++)
+            table.i32(r).text("S" + r / 1000).date("02-01-23").time("02-01-23 09:15").f32(r).f64(-r).endRow();
+        table.close();
+
+        Read read = read(path);
+        assertEquals(2, read.batches);
+        assertEquals(rows, read.sno.size());
+        for(int r = 0; r < rows; r++){
+            assertEquals(r, read.sno.get(r));
+            assertEquals("S" + r / 1000, read.symbol.get(r));
+            assertEquals(-r, read.cost.get(r));
+        }
+    }
+
+    @Test
+    void inMemoryRowsAppendInOrder() throws Exception {
+        // a PrintWriters.Buffer's rows, with their own dictionary, appended to the file's table
+        Path path = dir.resolve("appended.arrow");
+        ArrowTable file = new ArrowTable(path.toString(), SCHEMA);
+        file.i32(1).text("ABC").date("02-01-23").time("02-01-23 09:15").f32(1).f64(1).endRow();
+        ArrowTable buffered = file.inMemory();
+        buffered.i32(2).text("XYZ").date("03-01-23").time("03-01-23 10:00").f32(2).f64(2).endRow();
+        buffered.i32(3).text("ABC").date("04-01-23").time("04-01-23 11:30").f32(3).f64(3).endRow();
+        buffered.appendTo(file);
+        file.close();
+
+        Read read = read(path);
+        assertEquals(List.of(1, 2, 3), read.sno);
+        assertEquals(List.of("ABC", "XYZ", "ABC"), read.symbol);
+        assertEquals(List.of(seconds(2023, 1, 2, 9, 15), seconds(2023, 1, 3, 10, 0), seconds(2023, 1, 4, 11, 30)), read.entry);
+    }
+}
@@ -0,0 +1,98 @@
+package com.valar.basestrategy.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimerWheelTest {
+    // a Monday 09:15 in epoch minutes
+    private static final long START = 19_360L * 1440 + 555;
+
+    private final TimerWheel<String> wheel = new TimerWheel<>();
+    private final List<TimerWheel.Entry<String>> due = new ArrayList<>();
+
+    private List<String> advance(long time){
+        due.clear();
+        wheel.advance(time, due);
+        List<String> items = new ArrayList<>();
+        for(TimerWheel.Entry<String> entry : due) items.add(entry.item);
+        return items;
+    }
+
+    @Test
+    void cascadesDownEveryLevelMinuteByMinute(){
+        advance(START);
+        // 64^k minutes out lands on level k; each has to be refiled down to level 0 before it fires
+        long[] deadlines = {START + 5, START + 64 * 3 + 7, START + 64 * 64 * 2 + 11, START + 64L * 64 * 64 + 13};
+        for(int i = 0; i < deadlines.length; i++) wheel.schedule(deadlines[i], "level" + i, i);
+        int fired = 0;
+        for(long t = START + 1; t <= deadlines[deadlines.length - 1]; t++){
+            List<String> items = advance(t);
+            if(fired < deadlines.length && t == deadlines[fired]){
+                assertEquals(List.of("level" + fired), items, "at minute " + (t - START));
+                fired++;
+            } else assertTrue(items.isEmpty(), "early fire at minute " + (t - START) + ": " + items);
+        }
+        assertEquals(deadlines.length, fired);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void oneLargeAdvanceFiresAcrossLevelsInDeadlineOrder(){
+        advance(START);
+        wheel.schedule(START + 64L * 64 * 64 + 1, "weeks", 0);
+        wheel.schedule(START + 64 * 64 + 1, "days", 0);
+        wheel.schedule(START + 1, "minute", 0);
+        wheel.schedule(START + 64 + 1, "hour", 0);
+        assertEquals(List.of("minute", "hour", "days", "weeks"), advance(START + 64L * 64 * 64 * 2));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void deadlinesAtOrBeforeNowGoToTheOverdueList(){
+        // before the first advance the time is unknown: both wait for it, then only the past one fires
+        wheel.schedule(START - 10, "past", 0);
+        wheel.schedule(START + 10, "future", 0);
+        assertEquals(List.of("past"), advance(START));
+        assertEquals(1, wheel.size());
+
+        // at or before the current time: fires on the next advance even if the time does not move
+        wheel.schedule(START, "now", 1);
+        wheel.schedule(START - 1440, "yesterday", 2);
+        assertEquals(List.of("now", "yesterday"), advance(START));
+        assertEquals(List.of("future"), advance(START + 10));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void reArmedEntriesFireAtTheirNewDeadline(){
+        advance(START);
+        wheel.schedule(START + 30, "thursday", 7);
+        assertEquals(List.of("thursday"), advance(START + 40));
+        // the rule was not satisfied on that bar: back on the wheel for a week later, as StrategyImpl does
+        TimerWheel.Entry<String> fired = due.get(0);
+        wheel.schedule(fired.deadline + 7 * 1440, fired.item, fired.reason);
+        assertEquals(1, wheel.size());
+        assertTrue(advance(START + 30 + 7 * 1440 - 1).isEmpty());
+        assertEquals(List.of("thursday"), advance(START + 30 + 7 * 1440));
+        assertEquals(7, due.get(0).reason);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void clearForgetsEntriesAndTime(){
+        advance(START);
+        wheel.schedule(START + 100, "dropped", 0);
+        wheel.schedule(START - 1, "overdue", 0);
+        wheel.clear();
+        assertEquals(0, wheel.size());
+        // an earlier time is fine once cleared
+        wheel.schedule(START - 500, "fresh", 0);
+        assertTrue(advance(START - 600).isEmpty());
+        assertEquals(List.of("fresh"), advance(START + 200));
+    }
+}